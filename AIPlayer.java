@@ -1,6 +1,10 @@
 package main;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Class containing the logic and code for the AIPlayer
@@ -14,27 +18,786 @@ public class AIPlayer {
 	/**	Move object that is set to the best move from the Minimax algorithm */
 	private Move bestMove;
 
-	/** How many layers deep the Minimax algorithm will run*/
+	/** How many layers deep the Minimax algorithm will run when no other limits are set*/
 	final int DEPTH = 8;
-	
+
+	/** Memory budget of the transposition table when none is given, in bytes */
+	static final long DEFAULT_TABLE_BYTES = 16L << 20;
+
+	/** Empty spaces left at or below which getBestMove solves the position exactly */
+	static final int DEFAULT_SOLVER_THRESHOLD = 20;
+
+	/** Score of a proven win before the solver's distance to the end is added */
+	static final int SOLVED_WIN = 1_000_000;
+
+	/** Half-width of the aspiration window placed around the previous iteration's score */
+	static final int ASPIRATION_WINDOW = 60;
+
+	/** Key xor'd into the hash for positions where the min player is to move */
+	private static final long MIN_TO_MOVE = 0x9E3779B97F4A7C15L;
+
+	/** Transposition table shared by every search this AIPlayer runs */
+	private TranspositionTable table;
+
+	/** Limits used by getBestMove when none are passed in */
+	private SearchLimits searchLimits;
+
+	/** Limits of the search currently running */
+	private SearchLimits limits;
+
+	/** Depth of the iteration currently being searched, the depth at the root of the tree */
+	private int rootDepth;
+
+	/** True if the root position is its own mirror image, so only half of its moves are searched */
+	private boolean rootSymmetric;
+
+	/** Best root move found so far by the iteration currently being searched */
+	private Move iterationMove;
+
+	/** Score of the last completed iteration */
+	private int bestScore;
+
+	/** Depth of the last completed iteration, 0 if none completed */
+	private int completedDepth;
+
+	/** Number of nodes visited by the search currently running */
+	private long nodes;
+
+	/** Number of leaf positions the search currently running has evaluated */
+	private long leafEvaluations;
+
+	/** Number of transposition table lookups by the search currently running */
+	private long tableProbes;
+
+	/** Number of transposition table lookups that found the position */
+	private long tableHits;
+
+	/** Player the last move was found for */
+	private int rootPlayer;
+
+	/** Where the last move came from: "book", "tactics", "cache", "solver" or "search" */
+	private String moveSource;
+
+	/** Wall-clock time of the last getBestMove in nanoseconds */
+	private long moveNanos;
+
+	/** System.nanoTime() value at which the last getBestMove started */
+	private long startNanos;
+
+	/** Called with the statistics so far after every completed iteration, null for none */
+	private Consumer<SearchStats> iterationListener;
+
+	/** Metrics every move is recorded in, null to not record moves */
+	private EngineMetrics metrics;
+
+	/** System.nanoTime() value at which the search currently running has to stop */
+	private long deadline;
+
+	/** Set once the search currently running has used up its budget or was stopped from another thread */
+	private volatile boolean stopped;
+
+	/** Set by stop and cleared by resume, never by a search, so a stop that comes before the search it was meant for starts still stops it */
+	private volatile boolean stopRequested;
+
+	/** Number of threads that search each move */
+	private int threads = 1;
+
+	/**
+	 * Helper AIPlayers for a parallel search, one per extra thread. Each searches its own copy of
+	 * the gameboard and shares this AIPlayer's transposition table (Lazy SMP).
+	 */
+	private AIPlayer[] helpers = new AIPlayer[0];
+
+	/** Threads that run the helpers, null until a parallel search is run */
+	private ExecutorService pool;
+
+	/**
+	 * 0 for the AIPlayer that owns the search, otherwise the number of the helper. Helpers start on
+	 * odd or even depths and rotate their column order so their searches spread out.
+	 */
+	private int helperId;
+
+	/** Decides the order columns are searched in, with this AIPlayer's killers and history */
+	private MoveOrdering ordering;
+
+	/** Buffer of ordered moves for each ply, so ordering doesn't allocate */
+	private int[][] moveBuffers;
+
+	/** Opening book consulted before searching, null for none */
+	private OpeningBook openingBook;
+
+	/** Results of earlier searches kept on disk, consulted before searching, null for none, may be set mid-search */
+	private volatile EvaluationCache evaluationCache;
+
+	/** Exact solver for late positions, created the first time it is needed */
+	private volatile EndgameSolver solver;
+
+	/** The solver's table holds 2^solverTableBits positions */
+	private int solverTableBits;
+
+	/** Empty spaces left at or below which the solver is used instead of the search, 0 for never */
+	private int solverThreshold = DEFAULT_SOLVER_THRESHOLD;
+
+	/** Score of each column from the last solve */
+	private int[] solverScores;
+
+	/** True if the last getBestMove was answered by the solver */
+	private boolean solved;
+
+	/**
+	 * True if immediate wins and forced moves are played without a search, moves that lose right
+	 * away are never searched and threats are scored at the leaves, see setTactics
+	 */
+	private boolean tactics;
+
 	public AIPlayer(Gameboard game) {
+		this(game, new TranspositionTable(DEFAULT_TABLE_BYTES, false));
+	}
+
+	/**
+	 * Creates an AIPlayer that searches with the given transposition table
+	 * @param game the gameboard to play on
+	 * @param table the transposition table, sized and allocated by the caller
+	 */
+	public AIPlayer(Gameboard game, TranspositionTable table) {
 		this.board = game;
+		this.table = table;
+		this.searchLimits = SearchLimits.depth(DEPTH);
+		this.ordering = new MoveOrdering();
+		this.moveBuffers = new int[game.rows * game.cols + 1][game.cols];
+		this.tactics = game.hasBitboards();
+	}
+
+	/**
+	 * Forgets everything learned from earlier searches: the transposition table is cleared and
+	 * the move ordering starts over. Searches after this only depend on the position searched.
+	 */
+	public void newGame() {
+		table.clear();
+		ordering = ordering.copy(helperId);
+		for (AIPlayer helper : helpers) {
+			helper.ordering = ordering.copy(helper.helperId);
+		}
+	}
+
+	/**
+	 * Gets the gameboard this AIPlayer searches
+	 * @return the gameboard
+	 */
+	public Gameboard getBoard() {
+		return board;
+	}
+
+	/**
+	 * Sets the move ordering heuristics used by the search. Helper threads get copies of it.
+	 * @param ordering the move ordering to use
+	 */
+	public void setMoveOrdering(MoveOrdering ordering) {
+		this.ordering = ordering;
+		for (AIPlayer helper : helpers) {
+			helper.ordering = ordering.copy(helper.helperId);
+		}
+	}
+
+	/**
+	 * Gets the move ordering used by the search, which also counts the cutoffs of the last search
+	 * @return the move ordering
+	 */
+	public MoveOrdering getMoveOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Gets the fraction of beta cutoffs in the last search that the first move tried caused.
+	 * The closer to 1, the better the move ordering.
+	 * @return the first-move cutoff rate, 0 if there were no cutoffs
+	 */
+	public double getFirstMoveCutoffRate() {
+		long cutoffs = ordering.getCutoffs();
+		return cutoffs == 0 ? 0 : (double) ordering.getFirstMoveCutoffs() / cutoffs;
+	}
+
+	/**
+	 * Sets how many threads search each move. With one thread the search runs only on the calling
+	 * thread and is fully deterministic.
+	 * @param threads the number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads == this.threads) {
+			return;
+		}
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+		this.threads = threads;
+		helpers = new AIPlayer[threads - 1];
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i] = new AIPlayer(new Gameboard(board), table);
+			helpers[i].helperId = i + 1;
+			helpers[i].ordering = ordering.copy(i + 1);
+			helpers[i].tactics = tactics;
+		}
+	}
+
+	/**
+	 * Gets how many threads search each move
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the opening book to play from. Positions found in the book are answered without a search.
+	 * @param openingBook the book, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+
+	/**
+	 * Sets the cache of earlier search results. A position found in the cache searched at least
+	 * as deep as the search would go is answered without a search, and the result of every search
+	 * and solve is stored in the cache in the background. Can be called while a search runs, which
+	 * picks the cache up from its next move.
+	 * @param evaluationCache the cache, or null to not use one
+	 */
+	public void setEvaluationCache(EvaluationCache evaluationCache) {
+		this.evaluationCache = evaluationCache;
+	}
+
+	/**
+	 * Sets how many empty spaces can be left for getBestMove to solve the position exactly instead
+	 * of searching. The solver ignores the time and node limits, so keep this where solving is fast.
+	 * Gameboards too big for bitboards are never solved.
+	 * @param solverThreshold the number of empty spaces, 0 to never solve
+	 */
+	public void setSolverThreshold(int solverThreshold) {
+		this.solverThreshold = solverThreshold;
+	}
+
+	/**
+	 * Turns the tactical checks on or off. With tactics on, a move that wins right away is played
+	 * without a search, and so is the only move that doesn't let the opponent win right away. The
+	 * search never tries a move that lets the opponent win right away, scores a position where
+	 * every move does as a loss without searching it, and adds Gameboard.getThreatValue to the
+	 * heuristic value at the leaves. Gameboards too big for bitboards never use tactics.
+	 * @param tactics true to use tactics, the default
+	 */
+	public void setTactics(boolean tactics) {
+		this.tactics = tactics && board.hasBitboards();
+		for (AIPlayer helper : helpers) {
+			helper.tactics = this.tactics;
+		}
+	}
+
+	/**
+	 * Checks whether the search uses tactics, see setTactics
+	 * @return true if tactics are on
+	 */
+	public boolean getTactics() {
+		return tactics;
+	}
+
+	/**
+	 * Checks whether the last move came from the exact solver. If it did getBestScore is a proven
+	 * result: 0 for a draw, otherwise SOLVED_WIN plus the number of moves the winner has left to
+	 * spare, positive if player 1 wins and negative if player 2 wins.
+	 * @return true if the last move was solved
+	 */
+	public boolean isSolved() {
+		return solved;
+	}
+
+	/**
+	 * Gets how long the exact solver took for the last move
+	 * @return the solve time in milliseconds, 0 if the last move wasn't solved
+	 */
+	public double getSolveMillis() {
+		return solved ? solver.getSolveMillis() : 0;
+	}
+
+	/**
+	 * Stops the search currently running as soon as possible. Safe to call from any thread. Every
+	 * search until resume is called is stopped too, including one that hasn't started yet, and
+	 * returns the best move of its first iteration, or null from the solver.
+	 */
+	public void stop() {
+		stopRequested = true;
+		stopped = true;
+		EndgameSolver current = solver;
+		if (current != null) {
+			current.stop();
+		}
+		for (AIPlayer helper : helpers) {
+			helper.stop();
+		}
+	}
+
+	/**
+	 * Lets searches run again after stop. Call it when a search is scheduled, before whatever may
+	 * stop that search, not on the thread that runs it: a stop that comes after resume stops the
+	 * search even if it hasn't started yet.
+	 */
+	public void resume() {
+		stopRequested = false;
+		EndgameSolver current = solver;
+		if (current != null) {
+			current.resume();
+		}
+	}
+
+	/**
+	 * Sets a listener that is told about every completed iteration of a search, on the thread
+	 * running the search. While it runs getPrincipalVariation returns the line of the iteration.
+	 * @param iterationListener called with the statistics of the search so far, or null for none
+	 */
+	public void setIterationListener(Consumer<SearchStats> iterationListener) {
+		this.iterationListener = iterationListener;
+	}
+
+	/**
+	 * Sets the metrics every move is recorded in. Without metrics no statistics objects are created.
+	 * @param metrics the metrics, or null to stop recording
+	 */
+	public void setMetrics(EngineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the statistics of the last move, counted over every thread that searched it
+	 * @return the statistics
+	 */
+	public SearchStats getLastStats() {
+		long totalNodes = nodes;
+		long leaves = leafEvaluations;
+		long probes = tableProbes;
+		long hits = tableHits;
+		long cutoffs = 0;
+		long firstMoveCutoffs = 0;
+		if ("search".equals(moveSource)) {
+			cutoffs = ordering.getCutoffs();
+			firstMoveCutoffs = ordering.getFirstMoveCutoffs();
+			for (AIPlayer helper : helpers) {
+				totalNodes += helper.nodes;
+				leaves += helper.leafEvaluations;
+				probes += helper.tableProbes;
+				hits += helper.tableHits;
+				cutoffs += helper.ordering.getCutoffs();
+				firstMoveCutoffs += helper.ordering.getFirstMoveCutoffs();
+			}
+		}
+		return new SearchStats(moveSource, totalNodes, leaves, cutoffs, firstMoveCutoffs, probes, hits,
+				rootDepth, moveNanos, bestScore);
+	}
+
+	/**
+	 * Sets the limits used by getBestMove when none are passed in
+	 * @param searchLimits the depth, time and node limits for each move
+	 */
+	public void setSearchLimits(SearchLimits searchLimits) {
+		this.searchLimits = searchLimits;
+	}
+
+	/**
+	 * Gets the limits used by getBestMove when none are passed in
+	 * @return the depth, time and node limits for each move
+	 */
+	public SearchLimits getSearchLimits() {
+		return searchLimits;
+	}
+
+	/**
+	 * Gets the score of the last completed iteration of the last search. Positive scores
+	 * favor player 1 and negative scores favor player 2. A win the search or the tactics found is
+	 * scored like a solved one, SOLVED_WIN plus the number of moves the winner has left to spare.
+	 * @return the score of the best move
+	 */
+	public int getBestScore() {
+		return bestScore;
+	}
+
+	/**
+	 * Gets the depth of the deepest iteration the last search started
+	 * @return the depth reached
+	 */
+	public int getDepthReached() {
+		return rootDepth;
+	}
+
+	/**
+	 * Gets the number of nodes the last search visited
+	 * @return the node count
+	 */
+	public long getNodes() {
+		return nodes;
 	}
 
 	//min-max algorithm
 
 	/**
-	 * Uses the minimax algorithm to determine the best move
+	 * Uses the minimax algorithm to determine the best move for the player whose turn it is
 	 * @return A move object, uses the bestMove attribute.
 	 */
 	public Move getBestMove(){
-		ArrayList<Move> moves = new ArrayList<Move>();
-		maxPlayer(DEPTH, Integer.MIN_VALUE, Integer.MAX_VALUE);
-		board.setTurn(2);
-		moves.clear();
+		return getBestMove(board.getTurn());
+	}
+
+	/**
+	 * Uses the minimax algorithm to determine the best move for a player within the limits
+	 * set by setSearchLimits
+	 * @param player the player to find a move for. 1 for player 1, 2 for player 2.
+	 * @return A move object, uses the bestMove attribute.
+	 */
+	public Move getBestMove(int player){
+		return getBestMove(player, searchLimits);
+	}
+
+	/**
+	 * Uses iterative deepening minimax to determine the best move for a player. Each iteration
+	 * searches one layer deeper than the last, starting with the previous best move and within
+	 * an aspiration window around the previous score, until a limit is reached. The first
+	 * iteration always completes so there is always a move to return.
+	 * @param player the player to find a move for. 1 for player 1, 2 for player 2.
+	 * @param limits the depth, time and node limits for the search
+	 * @return A move object from the last completed iteration, or from the partly searched
+	 * iteration if it already found a better move.
+	 */
+	public Move getBestMove(int player, SearchLimits limits){
+		startNanos = System.nanoTime();
+		Move move = chooseMove(player, limits);
+		moveNanos = System.nanoTime() - startNanos;
+		if (move != null && ("search".equals(moveSource) || "solver".equals(moveSource))) {
+			cacheResult(player);
+		}
+		if (metrics != null) {
+			metrics.record(getLastStats());
+		}
+		return move;
+	}
+
+	/**
+	 * Picks a move from the opening book, the tactics, the cache, the solver or the search, in that order
+	 * @param player the player to find a move for
+	 * @param limits the depth, time and node limits for the search
+	 * @return the move
+	 */
+	private Move chooseMove(int player, SearchLimits limits){
+		rootPlayer = player;
+		solved = false;
+		leafEvaluations = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		moveSource = "book";
+		Move bookMove = getBookMove(player);
+		if (bookMove != null) {
+			return bookMove;
+		}
+		moveSource = "tactics";
+		Move tacticalMove = getTacticalMove(player);
+		if (tacticalMove != null) {
+			return tacticalMove;
+		}
+		moveSource = "cache";
+		Move cachedMove = getCachedMove(player, limits);
+		if (cachedMove != null) {
+			return cachedMove;
+		}
+		if (solverThreshold > 0 && board.hasBitboards()
+				&& board.rows * board.cols - board.getTotalMoves() <= solverThreshold
+				&& player == board.getTotalMoves() % 2 + 1) {
+			moveSource = "solver";
+			return getSolvedMove(player);
+		}
+		moveSource = "search";
+		table.newSearch();
+		stopped = false;	//a stop requested before this finds its way in through outOfBudget
+		if (threads == 1) {
+			return search(player, limits);
+		}
+
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(helpers.length, runnable -> {
+				Thread thread = new Thread(runnable, "AIPlayer helper");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		//helpers have no budget of their own, they run until the main search stops them
+		SearchLimits helperLimits = SearchLimits.depth(limits.getDepth());
+		List<Future<?>> running = new ArrayList<>();
+		for (AIPlayer helper : helpers) {
+			helper.board.copyFrom(board);
+			helper.stopRequested = false;	//the main search stops the helpers when it's done
+			helper.stopped = false;
+			running.add(pool.submit(() -> helper.search(player, helperLimits)));
+		}
+		Move move = search(player, limits);
+		for (AIPlayer helper : helpers) {
+			helper.stop();
+		}
+		for (Future<?> future : running) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				//a helper only warms the shared table, its own result is not needed
+			}
+		}
+		return move;
+	}
+
+	/**
+	 * Gets the principal variation of the last move: the best move followed by the line of play
+	 * both players are expected to follow, read back from the transposition table. The line ends
+	 * at the search depth, at a winning move or where the table has no move for the position.
+	 * Moves from the book or the solver have no line after them.
+	 * @return the columns of the line, empty if there was no move
+	 */
+	public int[] getPrincipalVariation(){
+		if (bestMove == null) {
+			return new int[0];
+		}
+		int[] line = new int[Math.max(1, rootDepth)];
+		int count = 0;
+		int player = rootPlayer;
+		int col = bestMove.getCol();
+		while (col >= 0 && board.canPlay(col)) {
+			line[count++] = col;
+			boolean wins = board.isWinningMove(col, player);
+			board.testMove(col, player);
+			player = player == 1 ? 2 : 1;
+			if (wins || count == line.length || !"search".equals(moveSource)) {
+				break;
+			}
+			boolean mirrored = board.getMirroredHash() < board.getHash();
+			long key = mirrored ? board.getMirroredHash() : board.getHash();
+			long entry = table.probe(player == 1 ? key : key ^ MIN_TO_MOVE);
+			col = entry == 0 ? -1 : mirror(TranspositionTable.move(entry), mirrored);
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			board.undoMove(line[i]);
+		}
+		return Arrays.copyOf(line, count);
+	}
+
+	/**
+	 * Looks the position up in the opening book
+	 * @param player the player to find a move for
+	 * @return the book move, or null if there is no book or the position isn't in it
+	 */
+	private Move getBookMove(int player){
+		int totalMoves = board.getTotalMoves();
+		//book positions are keyed without the side to move, player 1 always moves on even counts
+		if (openingBook == null || !openingBook.fits(board) || totalMoves > openingBook.getPlies()
+				|| player != totalMoves % 2 + 1) {
+			return null;
+		}
+		long key = board.getCanonicalKey();
+		int col = mirror(openingBook.getMove(key), board.isKeyMirrored());
+		if (col < 0 || !board.canPlay(col)) {
+			return null;
+		}
+		bestMove = new Move(board.getHeight(col), col);
+		bestScore = openingBook.getScore(key);
+		rootDepth = 0;
+		nodes = 0;
+		return bestMove;
+	}
+
+	/**
+	 * Answers the position without a search when the tactics decide it: a move that wins right
+	 * away, the only move that doesn't let the opponent win right away, or the first block when
+	 * every move does. Only the win and the loss are scored exactly, a forced move gets the value of
+	 * the position before it.
+	 * @param player the player to find a move for
+	 * @return the move, or null if the position needs a search
+	 */
+	private Move getTacticalMove(int player){
+		if (!tactics || board.isFull()) {
+			return null;
+		}
+		int opponent = player == 1 ? 2 : 1;
+		long playable = board.getPlayableSpaces();
+		long move = board.getWinningSpaces(player) & playable;
+		if (move != 0) {
+			bestScore = winScore(player, board.getTotalMoves());
+		} else {
+			move = board.getNonLosingMoves(player);
+			if (move == 0) {
+				long blocks = board.getWinningSpaces(opponent) & playable;
+				move = blocks != 0 ? blocks : playable;
+				bestScore = winScore(opponent, board.getTotalMoves() + 1);
+			} else if ((move & (move - 1)) == 0) {
+				bestScore = board.getHeuristicValue() + board.getThreatValue();
+			} else {
+				return null;
+			}
+		}
+		int col = Long.numberOfTrailingZeros(move) / (board.rows + 1);
+		bestMove = new Move(board.getHeight(col), col);
+		rootDepth = 0;
+		nodes = 0;
+		return bestMove;
+	}
+
+	/**
+	 * Looks the position up in the evaluation cache
+	 * @param player the player to find a move for
+	 * @param limits the limits of the search the cached result has to stand in for
+	 * @return the cached move, or null if there is no cache or the position wasn't searched deep enough
+	 */
+	private Move getCachedMove(int player, SearchLimits limits){
+		//like the book, the cache is keyed without the side to move
+		if (evaluationCache == null || !evaluationCache.fits(board) || player != board.getTotalMoves() % 2 + 1) {
+			return null;
+		}
+		long entry = evaluationCache.probe(board.getCanonicalKey());
+		int depth = Math.min(limits.getDepth(), board.rows * board.cols - board.getTotalMoves());
+		if (entry == 0 || EvaluationCache.depth(entry) < depth) {
+			return null;
+		}
+		int col = mirror(EvaluationCache.move(entry), board.isKeyMirrored());
+		if (col < 0 || col >= board.cols || !board.canPlay(col)) {
+			return null;
+		}
+		bestMove = new Move(board.getHeight(col), col);
+		bestScore = EvaluationCache.score(entry);
+		rootDepth = EvaluationCache.depth(entry);
+		nodes = 0;
 		return bestMove;
 	}
 
+	/**
+	 * Hands the result of the last search or solve to the evaluation cache. A solve counts as
+	 * searched to the end of the game.
+	 * @param player the player the move was found for
+	 */
+	private void cacheResult(int player){
+		int depth = solved ? rootDepth : completedDepth;
+		if (evaluationCache != null && evaluationCache.fits(board) && player == board.getTotalMoves() % 2 + 1
+				&& depth > 0) {
+			evaluationCache.store(board.getCanonicalKey(), bestScore, Math.min(depth, 255),
+					mirror(bestMove.getCol(), board.isKeyMirrored()));
+		}
+	}
+
+	/**
+	 * Solves the position exactly with the endgame solver
+	 * @param player the player to find a move for, the player to move by piece count
+	 * @return the move with the best proven result, or null if the solve was stopped
+	 */
+	private Move getSolvedMove(int player){
+		//the table only has to hold the positions of solves as big as the threshold: 2^12 positions
+		//(36 kB) at the default of 20 empty spaces solve as fast as 2^22 (36 MB), which solves 32
+		//empty spaces no faster than 2^20
+		int tableBits = Math.max(12, Math.min(22, solverThreshold - 12));
+		if (solver == null || solverTableBits < tableBits) {
+			solver = new EndgameSolver(board.rows, board.cols, board.length, tableBits);
+			solverTableBits = tableBits;
+			solverScores = new int[board.cols];
+			if (stopRequested) {
+				return null;	//stop may have come before the solver existed to be stopped
+			}
+		}
+		int col = solver.bestMove(board, solverScores);
+		nodes = solver.getNodes();
+		rootDepth = board.rows * board.cols - board.getTotalMoves();
+		if (col < 0 || solver.wasStopped()) {
+			return null;
+		}
+		int score = solverScores[col];
+		int sign = player == 1 ? 1 : -1;
+		bestScore = score == 0 ? 0 : sign * (score > 0 ? SOLVED_WIN + score : score - SOLVED_WIN);
+		solved = true;
+		bestMove = new Move(board.getHeight(col), col);
+		return bestMove;
+	}
+
+	/**
+	 * Runs the iterative deepening search on this AIPlayer
+	 * @param player the player to find a move for. 1 for player 1, 2 for player 2.
+	 * @param limits the depth, time and node limits for the search
+	 * @return the best move found
+	 */
+	private Move search(int player, SearchLimits limits){
+		this.limits = limits;
+		nodes = 0;
+		leafEvaluations = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		deadline = limits.getTimeMillis() > 0
+				? System.nanoTime() + limits.getTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+		bestMove = null;
+		bestScore = 0;
+		completedDepth = 0;
+		ordering.newSearch(board);
+		rootSymmetric = board.isSymmetric();
+
+		//searching past the last empty space would only repeat the same search
+		int maxDepth = Math.min(limits.getDepth(), board.rows * board.cols - board.getTotalMoves());
+		for (rootDepth = 1 + (helperId & 1); rootDepth <= maxDepth; rootDepth++) {
+			int alpha = Integer.MIN_VALUE;
+			int beta = Integer.MAX_VALUE;
+			if (rootDepth > 1) {
+				alpha = bestScore - ASPIRATION_WINDOW;
+				beta = bestScore + ASPIRATION_WINDOW;
+			}
+			iterationMove = null;
+			int score = searchRoot(player, alpha, beta);
+			if (!stopped && rootDepth > 1 && (score <= alpha || score >= beta)) {
+				//the score fell outside the window, search again with the full window
+				iterationMove = null;
+				score = searchRoot(player, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			}
+			if (iterationMove != null) {
+				bestMove = iterationMove;
+			}
+			if (stopped) {
+				break;
+			}
+			bestScore = score;
+			completedDepth = rootDepth;
+			if (iterationListener != null && helperId == 0) {
+				moveNanos = System.nanoTime() - startNanos;
+				iterationListener.accept(getLastStats());
+			}
+		}
+		rootDepth = Math.min(rootDepth, maxDepth);
+		return bestMove;
+	}
+
+	/**
+	 * Searches the root of the tree for the current iteration
+	 * @param player the player to move at the root, player 1 maximizes and player 2 minimizes
+	 * @param alpha alpha for alpha-beta pruning
+	 * @param beta beta for alpha-beta pruning
+	 * @return the score of the root position
+	 */
+	private int searchRoot(int player, int alpha, int beta){
+		return player == 1 ? maxPlayer(rootDepth, alpha, beta) : minPlayer(rootDepth, alpha, beta);
+	}
+
+	/**
+	 * Counts a node and checks whether the search has used up its time or node budget or was
+	 * stopped. The first iteration is never stopped.
+	 * @return true if the search has to stop
+	 */
+	private boolean outOfBudget(){
+		nodes++;
+		if (rootDepth > 1 && !stopped) {
+			if (stopRequested) {
+				stopped = true;	//a stop that came while the search was starting
+			} else if (limits.getNodes() > 0 && nodes >= limits.getNodes()) {
+				stopped = true;
+			} else if ((nodes & 1023) == 0 && System.nanoTime() >= deadline) {
+				stopped = true;
+			}
+		}
+		return stopped;
+	}
+
 	/**
 	 * The Max player for the minimax algorithm
 	 * @param depth how deep you want the AI to generate moves.
@@ -43,28 +806,87 @@ public class AIPlayer {
 	 * @return the score for the max player.
 	 */
 	private int maxPlayer(int depth, int alpha, int beta){
-		ArrayList<Move> maxMoves = board.makeTestMoves();
 		int max = alpha;
 
-		if (depth == 0 || maxMoves.size() == 0){
-			return boardHeuristicValue(board.getBoard());
+		if (outOfBudget()){
+			return max;
+		}
+		if (depth == 0 || board.isFull()){
+			return evaluate(1);
+		}
+		long safe = -1L;
+		if (tactics){
+			//only moves that don't let the opponent win right away are searched, so the player to
+			//move never has a winning move here, but may have no move left that doesn't lose
+			safe = board.getNonLosingMoves(1);
+			if (safe == 0 && depth < rootDepth){
+				return winScore(2, board.getTotalMoves() + 1);
+			}
 		}
 
-		for(Move m : maxMoves){
-			board.testMove(m, 1);
-			int value = minPlayer(depth - 1, max, beta);
-			board.undoMove(m);
+		//a position and its mirror image share an entry, stored under the smaller hash
+		long hash = board.getHash();
+		long mirroredHash = board.getMirroredHash();
+		boolean mirrored = mirroredHash < hash;
+		long key = mirrored ? mirroredHash : hash;
+		long entry = table.probe(key);
+		tableProbes++;
+		int hashMove = -1;
+		if (entry != 0) {
+			tableHits++;
+			hashMove = mirror(TranspositionTable.move(entry), mirrored);
+			if (depth < rootDepth && TranspositionTable.depth(entry) >= depth) {
+				int score = TranspositionTable.score(entry);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && score >= beta)
+						|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+					return score;
+				}
+			}
+		}
+		if (depth == rootDepth && bestMove != null) {
+			hashMove = bestMove.getCol();	//the previous iteration's best move goes first
+		}
+
+		int bestCol = hashMove;
+		int ply = rootDepth - depth;
+		int[] moves = moveBuffers[ply];
+		int count = ordering.orderMoves(board, 1, ply, hashMove, moves);
+		for(int i = 0; i < count; i++){
+			int col = moves[i];
+			if (depth == rootDepth && rootSymmetric && col > board.cols - 1 - col) {
+				continue;	//the mirrored move in the left half is worth the same
+			}
+			if (tactics && (safe & board.getColumnMask(col)) == 0) {
+				continue;	//the opponent would win right away
+			}
+			int row = board.getHeight(col);
+			board.testMove(col, 1);
+			//with tactics no move here wins: tactics play a win at the root, and each move searched leaves none
+			int value = !tactics && board.hasWon(1) ? winScore(1, board.getTotalMoves() - 1)
+					: minPlayer(depth - 1, max, beta);
+			board.undoMove(col);
+			if (stopped) {
+				return max;	//the value of an unfinished search can't be trusted
+			}
 
 			if (value > max) {
 				max = value;
+				bestCol = col;
+				if (depth == rootDepth) {
+					iterationMove = new Move(row, col);
+				}
 				if (max >= beta) {
+					ordering.recordCutoff(1, ply, col, depth, i == 0);
 					break;
 				}
-				if (depth == DEPTH) {
-					bestMove = m;
-				}
 			}
 		}
+
+		int bound = max >= beta ? TranspositionTable.LOWER
+				: max > alpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+		table.store(key, max, depth, bound, mirror(bestCol, mirrored));
 		return max;
 	}
 
@@ -76,92 +898,163 @@ public class AIPlayer {
 	 * @return the score for the min player.
 	 */
 	private int minPlayer(int depth, int alpha, int beta){
-		ArrayList<Move> minMoves = board.makeTestMoves();
 		int min = beta;
 
-		if (depth == 0 || minMoves.size() == 0){
-			return boardHeuristicValue(board.getBoard());
+		if (outOfBudget()){
+			return min;
+		}
+		if (depth == 0 || board.isFull()){
+			return evaluate(2);
+		}
+		long safe = -1L;
+		if (tactics){
+			//only moves that don't let the opponent win right away are searched, so the player to
+			//move never has a winning move here, but may have no move left that doesn't lose
+			safe = board.getNonLosingMoves(2);
+			if (safe == 0 && depth < rootDepth){
+				return winScore(1, board.getTotalMoves() + 1);
+			}
 		}
 
-		for(Move m : minMoves){
-			board.testMove(m, 2);
-			int value = maxPlayer(depth - 1, alpha, min);
-			board.undoMove(m);
+		long hash = board.getHash();
+		long mirroredHash = board.getMirroredHash();
+		boolean mirrored = mirroredHash < hash;
+		long key = (mirrored ? mirroredHash : hash) ^ MIN_TO_MOVE;
+		long entry = table.probe(key);
+		tableProbes++;
+		int hashMove = -1;
+		if (entry != 0) {
+			tableHits++;
+			hashMove = mirror(TranspositionTable.move(entry), mirrored);
+			if (depth < rootDepth && TranspositionTable.depth(entry) >= depth) {
+				int score = TranspositionTable.score(entry);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && score >= beta)
+						|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+					return score;
+				}
+			}
+		}
+		if (depth == rootDepth && bestMove != null) {
+			hashMove = bestMove.getCol();	//the previous iteration's best move goes first
+		}
+
+		int bestCol = hashMove;
+		int ply = rootDepth - depth;
+		int[] moves = moveBuffers[ply];
+		int count = ordering.orderMoves(board, 2, ply, hashMove, moves);
+		for(int i = 0; i < count; i++){
+			int col = moves[i];
+			if (depth == rootDepth && rootSymmetric && col > board.cols - 1 - col) {
+				continue;	//the mirrored move in the left half is worth the same
+			}
+			if (tactics && (safe & board.getColumnMask(col)) == 0) {
+				continue;	//the opponent would win right away
+			}
+			int row = board.getHeight(col);
+			board.testMove(col, 2);
+			int value = !tactics && board.hasWon(2) ? winScore(2, board.getTotalMoves() - 1)
+					: maxPlayer(depth - 1, alpha, min);
+			board.undoMove(col);
+			if (stopped) {
+				return min;	//the value of an unfinished search can't be trusted
+			}
 
 			if (value < min) {
 				min = value;
+				bestCol = col;
+				if (depth == rootDepth) {
+					iterationMove = new Move(row, col);
+				}
 				if (min <= alpha) {
+					ordering.recordCutoff(2, ply, col, depth, i == 0);
 					break;
 				}
-				if (depth == DEPTH) {
-					bestMove = m;
-				}
 			}
 		}
+
+		int bound = min <= alpha ? TranspositionTable.UPPER
+				: min < beta ? TranspositionTable.EXACT : TranspositionTable.LOWER;
+		table.store(key, min, depth, bound, mirror(bestCol, mirrored));
 		return min;
 	}
 
 	/**
-	 * An overloaded method that generates a heuristic value given a 2D gameboard
-	 * @param board the array to generate a heuristic value for
-	 * @return the heuristic value for the board that was passed in
+	 * Scores a leaf of the search
+	 * @param player the player to move
+	 * @return the heuristic value, or with tactics on a loss if every move lets the opponent win
+	 * right away and otherwise the heuristic value plus the threat value
 	 */
-	public int boardHeuristicValue(int[][] board){
-		int value = 0;
-		for (int row = 0; row < 6; row++){
-			for (int col = 0; col < 7; col++){
-				value += boardHeuristicValue(board, row, col);
-			}
+	private int evaluate(int player){
+		leafEvaluations++;
+		if (!tactics) {
+			return board.getHeuristicValue();
 		}
-		return value;
+		if (!board.isFull() && board.getNonLosingMoves(player) == 0) {
+			return winScore(player == 1 ? 2 : 1, board.getTotalMoves() + 1);
+		}
+		return board.getHeuristicValue() + board.getThreatValue();
 	}
 
 	/**
-	 * Generates a heuristic value for a 2D gameboard and a row and column index.
-	 * It looks at longest chains of similar pieces up, down, left, right, and diagonally.
-	 * @param board the 2D array for generating heuristic values
-	 * @param row the row index that you want to start at
-	 * @param col the column index that you want to start at
-	 * @return the value for the chains at the given row, col index.
+	 * Scores a win the way getSolvedMove scores a solved one, so the sooner the win the higher
+	 * @param player the player who wins
+	 * @param moves number of pieces on the gameboard before the winning move
+	 * @return SOLVED_WIN plus the number of moves the winner has left to spare, negative if player 2 wins
 	 */
-	public int boardHeuristicValue(int board[][], int row, int col){
+	private int winScore(int player, int moves){
+		int score = SOLVED_WIN + (board.rows * board.cols + 1 - moves) / 2;
+		return player == 1 ? score : -score;
+	}
+
+	/**
+	 * Mirrors a column left to right when a table entry is stored for the mirrored position
+	 * @param col the column, or -1 for no move
+	 * @param mirrored true to mirror the column
+	 * @return the mirrored column if mirrored is true, otherwise col
+	 */
+	private int mirror(int col, boolean mirrored){
+		return mirrored && col >= 0 ? board.cols - 1 - col : col;
+	}
+
+	/**
+	 * Generates a heuristic value for a 2D gameboard from scratch by scoring every winning line
+	 * once. The search doesn't call this, it reads the same value from
+	 * Gameboard.getHeuristicValue(), which is kept up to date move by move.
+	 * @param board the array to generate a heuristic value for, the same size as this AIPlayer's gameboard
+	 * @return the heuristic value for the board that was passed in
+	 */
+	public int boardHeuristicValue(int[][] board){
+		WinningLines lines = this.board.getLines();
+		int colHeight = lines.getColHeight();
 		int value = 0;
-		if (col <= 3){	//checking board values to the right of the piece
-			value += chainHeuristicValue(new int[] {col, board[row][col], board[row][col+1], board[row][col+2], board[row][col+3]});
-		}
-		if (col >= 3){ //checking board values to the left of the piece and generating a score from it
-			value += chainHeuristicValue(new int[] {board[row][col], board[row][col-1], board[row][col-2], board[row][col-3]});
-		}
-		if (row >= 3){ //checking board values below the piece and generating a score from it
-			value += chainHeuristicValue(new int[] {board[row][col], board[row-1][col], board[row-2][col], board[row-3][col]});
-		}
-		if (row <= 2){ //generating a score from values above the piece
-			value += chainHeuristicValue(new int[] {board[row][col], board[row+1][col], board[row+2][col], board[row+3][col]});
-		}
-		if (col <= 3 && row <= 2){	//generating a score from values above and to the right of the piece
-			value += chainHeuristicValue(new int[] {board[row][col], board[row +1][col+1], board[row+2][col+2], board[row+3][col+3]});
-		}
-		if (col <= 3 && row >= 3){	//generating a score from values below and to the right of the piece
-			value += chainHeuristicValue(new int[] {board[row][col], board[row-1][col+1], board[row-2][col+2], board[row-3][col+3]});
-		}
-		if (col >= 3 && row <= 2){	//generating a score from values above and to the left of the piece
-			value += chainHeuristicValue(new int[] {board[row][col], board[row+1][col-1], board[row+2][col-2], board[row+3][col-3]});
-		}
-		if (col >= 3 && row >=3){
-			value += chainHeuristicValue(new int[] {board[row][col], board[row-1][col-1], board[row-2][col-2], board[row-3][col-3]});
+		for (int line = 0; line < lines.getLineCount(); line++){
+			int player1Chain = 0;
+			int player2Chain = 0;
+			for (int space : lines.getSpaces(line)){
+				int piece = board[space % colHeight][space / colHeight];
+				if (piece == 1){
+					player1Chain++;
+				}
+				if (piece == 2){
+					player2Chain++;
+				}
+			}
+			value += chainHeuristicValue(player1Chain, player2Chain, lines.getLength());
 		}
 		return value;
 	}
 
 	/**
-	 * Takes in the 4-element arrays from boardHeuristicValue and determines the value based
+	 * Takes in a 4-element array of pieces and determines the value based
 	 * on how many pieces in a row there are and whether or not the row is blocked by an
 	 * opponents piece.
 	 * @param chain the array that will be scored
-	 * @return a value that is negative if an opponents chain exists in the array or positive
-	 * if the AI's chain exists.
+	 * @return a value that is negative if player 2's chain exists in the array or positive
+	 * if player 1's chain exists.
 	 */
-	public int chainHeuristicValue(int[] chain){
+	public static int chainHeuristicValue(int[] chain){
 		int player1Chain = 0;
 		int player2Chain = 0;
 		for(int i = 0; i < chain.length; i++){
@@ -172,18 +1065,42 @@ public class AIPlayer {
 				player2Chain++;
 			}
 		}
-		if (player1Chain == 0){
-			if (player2Chain == 4) return -1000;
-			if (player2Chain == 3) return -50;
-			if (player2Chain == 2) return -10;
-			if (player2Chain == 1) return -1;
-		}
-		if (player2Chain == 0){
-			if (player1Chain == 4) return 1000;
-			if (player1Chain == 3) return 50;
-			if (player1Chain == 2) return 10;
-			if (player1Chain == 1) return 1;
+		return chainHeuristicValue(player1Chain, player2Chain, chain.length);
+	}
+
+	/**
+	 * An overloaded method that determines the value of a line of four from how many pieces
+	 * each player has in it. A line with pieces from both players is blocked and worth nothing.
+	 * @param player1Chain number of player 1's pieces in the line
+	 * @param player2Chain number of player 2's pieces in the line
+	 * @return a value that is negative if player 2's chain exists in the line or positive
+	 * if player 1's chain exists.
+	 */
+	public static int chainHeuristicValue(int player1Chain, int player2Chain){
+		return chainHeuristicValue(player1Chain, player2Chain, 4);
+	}
+
+	/**
+	 * Determines the value of a winning line of any length from how many pieces each player has
+	 * in it. A full line is a win, one or two pieces short are threats and any fewer pieces are
+	 * worth the least, the same values a line of four gets.
+	 * @param player1Chain number of player 1's pieces in the line
+	 * @param player2Chain number of player 2's pieces in the line
+	 * @param length number of spaces in the line
+	 * @return a value that is negative if player 2's chain exists in the line or positive
+	 * if player 1's chain exists.
+	 */
+	public static int chainHeuristicValue(int player1Chain, int player2Chain, int length){
+		if (player1Chain > 0 && player2Chain > 0){
+			return 0;	//blocked
 		}
-		return 0;
+		int chain = player1Chain + player2Chain;
+		int value;
+		if (chain == 0) value = 0;
+		else if (chain == length) value = 1000;
+		else if (chain == length - 1) value = 50;
+		else if (chain == length - 2) value = 10;
+		else value = 1;
+		return player1Chain > 0 ? value : -value;
 	}
-}
\ No newline at end of file
+}
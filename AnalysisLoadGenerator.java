@@ -0,0 +1,125 @@
+package main;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for AnalysisServer. Sends random early positions from a number of concurrent
+ * clients, each on its own virtual thread, and reports throughput and latency percentiles.
+ * <pre>
+ * usage: AnalysisLoadGenerator [-url http://127.0.0.1:8484/analyze] [-clients 16] [-requests 1000]
+ *                              [-depth 8] [-plies 8] [-seed 1]
+ * </pre>
+ */
+public class AnalysisLoadGenerator {
+
+	public static void main(String[] args) throws Exception {
+		String url = "http://127.0.0.1:8484/analyze";
+		int clients = 16;
+		int requests = 1000;
+		int depth = 8;
+		int plies = 8;
+		long seed = 1;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-url": url = args[i + 1]; break;
+				case "-clients": clients = Integer.parseInt(args[i + 1]); break;
+				case "-requests": requests = Integer.parseInt(args[i + 1]); break;
+				case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+				case "-plies": plies = Integer.parseInt(args[i + 1]); break;
+				case "-seed": seed = Long.parseLong(args[i + 1]); break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		System.out.println(run(url, clients, requests, depth, plies, seed));
+	}
+
+	/**
+	 * Sends the requests and waits for every response
+	 * @param url the server's analyze URL
+	 * @param clients number of requests in flight at once
+	 * @param requests total number of requests
+	 * @param depth search depth asked for
+	 * @param plies number of random moves in each position
+	 * @param seed seed for the random positions
+	 * @return a summary of throughput, latency and failures
+	 * @throws Exception if the load can't be generated
+	 */
+	public static String run(String url, int clients, int requests, int depth, int plies, long seed) throws Exception {
+		HttpClient client = HttpClient.newHttpClient();
+		List<String> positions = new ArrayList<>();
+		Random random = new Random(seed);
+		for (int i = 0; i < requests; i++) {
+			positions.add(randomPosition(random, plies));
+		}
+		long[] latencies = new long[requests];
+		int[] statuses = new int[requests];
+		long start = System.nanoTime();
+		try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> running = new ArrayList<>();
+			for (int c = 0; c < clients; c++) {
+				final int first = c;
+				final int stride = clients;
+				running.add(threads.submit(() -> {
+					for (int i = first; i < requests; i += stride) {
+						HttpRequest request = HttpRequest.newBuilder(
+								URI.create(url + "?depth=" + depth + "&moves=" + positions.get(i))).build();
+						long sent = System.nanoTime();
+						statuses[i] = client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+						latencies[i] = System.nanoTime() - sent;
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : running) {
+				future.get();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long failed = Arrays.stream(statuses).filter(status -> status != 200).count();
+		Arrays.sort(latencies);
+		return String.format("%d requests from %d clients in %.2f s (%.1f requests/s), %d failed%n"
+				+ "latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+				requests, clients, seconds, requests / seconds, failed,
+				percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+				latencies[requests - 1] / 1e6);
+	}
+
+	/**
+	 * Gets a percentile of sorted latencies
+	 * @param sorted latencies in nanoseconds, sorted
+	 * @param fraction the percentile as a fraction
+	 * @return the latency in milliseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * fraction) - 1)] / 1e6;
+	}
+
+	/**
+	 * Plays random moves on the standard gameboard without ending the game
+	 * @param random the random source
+	 * @param plies number of moves
+	 * @return the moves as digits
+	 */
+	private static String randomPosition(Random random, int plies) {
+		Gameboard board = new Gameboard();
+		StringBuilder moves = new StringBuilder();
+		while (moves.length() < plies) {
+			int col = random.nextInt(board.cols);
+			if (board.canPlay(col) && !board.isWinningMove(col, board.getTurn())) {
+				board.move(col);
+				moves.append(col);
+			}
+		}
+		return moves.toString();
+	}
+}
@@ -0,0 +1,259 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Headless position analysis over HTTP, bound to the loopback address so only tools on the same
+ * host can reach it. Every request runs on its own virtual thread, which parses it, hands the
+ * search to a fixed pool of engine threads and blocks cheaply until the result is back. Searches
+ * are CPU-bound and would hold on to the carrier threads, so they never run on the virtual
+ * threads themselves. The searches go to one ConcurrentEngine with a searcher per engine thread,
+ * which share one transposition table. A request waits
+ * in the queue for a free engine, and requests beyond the queue's capacity are turned away with 503.
+ * <pre>
+ * usage: AnalysisServer [-port 8484] [-engines cores] [-queue 64] [-hash 64] [-board 6x7x4]
+ *
+ * GET or POST /analyze?moves=3342&amp;depth=12&amp;time=0&amp;nodes=0
+ *   moves  the columns played from the empty gameboard as digits, may be empty
+ *   depth, time (milliseconds), nodes  the search limits, 0 for none except depth (default 8)
+ * 200 {"move":3,"score":12,"depth":12,"nodes":48213,"millis":31.2,"queueMillis":0.1,
+ *      "source":"search","pv":[3,2,3,3]}
+ * 400 {"error":"..."} for a bad position or limit, 503 when the queue is full
+ * </pre>
+ */
+public class AnalysisServer {
+	/** Deepest search a request may ask for */
+	static final int MAX_DEPTH = 64;
+
+	/** The HTTP server */
+	private final HttpServer server;
+
+	/** The engine threads the searches run on */
+	private final ExecutorService searchers;
+
+	/** Engine every search runs on, with one searcher per engine thread */
+	private final ConcurrentEngine engine;
+
+	/** Size of the gameboard, see Gameboard.parse */
+	private final String boardSize;
+
+	/** Permits for requests searching or waiting for an engine, the engines plus the queue */
+	private final Semaphore admitted;
+
+	/** Statistics of every search, published over JMX as "server" */
+	private final EngineMetrics metrics = EngineMetrics.register("server");
+
+	/** Requests turned away because the queue was full */
+	private long rejected;
+
+	/**
+	 * Creates a server on the loopback address, call start to accept requests
+	 * @param port the port to listen on, 0 for any free port
+	 * @param engines number of searches that can run at once
+	 * @param queue number of requests that can wait for an engine
+	 * @param tableBytes memory budget of the shared transposition table
+	 * @param boardSize size of the gameboard, see Gameboard.parse
+	 * @throws IOException if the port can't be bound
+	 */
+	public AnalysisServer(int port, int engines, int queue, long tableBytes, String boardSize) throws IOException {
+		this.boardSize = boardSize;
+		this.engine = new ConcurrentEngine(EngineSettings.parse(""), boardSize, tableBytes, engines);
+		engine.setMetrics(metrics);
+		searchers = Executors.newFixedThreadPool(engines, runnable -> {
+			Thread thread = new Thread(runnable, "analysis engine");
+			thread.setDaemon(true);
+			return thread;
+		});
+		admitted = new Semaphore(engines + queue);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/analyze", this::handle);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = 8484;
+		int engines = Runtime.getRuntime().availableProcessors();
+		int queue = 64;
+		long hashMegabytes = 64;
+		String board = "6x7x4";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-port": port = Integer.parseInt(args[i + 1]); break;
+				case "-engines": engines = Integer.parseInt(args[i + 1]); break;
+				case "-queue": queue = Integer.parseInt(args[i + 1]); break;
+				case "-hash": hashMegabytes = Long.parseLong(args[i + 1]); break;
+				case "-board": board = args[i + 1]; break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		AnalysisServer server = new AnalysisServer(port, engines, queue, hashMegabytes << 20, board);
+		server.start();
+		System.out.println("analyzing " + board + " positions on http://" + server.getAddress().getHostString()
+				+ ":" + server.getAddress().getPort() + "/analyze with " + engines + " engines");
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to a second for the running ones to finish
+	 */
+	public void stop() {
+		server.stop(1);
+		((ExecutorService) server.getExecutor()).shutdown();
+		searchers.shutdownNow();
+	}
+
+	/**
+	 * Gets the address the server listens on
+	 * @return the loopback address and port
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Gets the number of requests turned away because the queue was full
+	 * @return the rejected count
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Gets the statistics of the searches run so far
+	 * @return the metrics
+	 */
+	public EngineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Handles one analysis request on its virtual thread
+	 * @param exchange the request and its response
+	 * @throws IOException if the response can't be sent
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!admitted.tryAcquire()) {
+				synchronized (this) {
+					rejected++;
+				}
+				respond(exchange, 503, "{\"error\":\"busy\"}");
+				return;
+			}
+			try {
+				Map<String, String> params = parameters(exchange);
+				long queued = System.nanoTime();
+				String result = searchers.submit(() -> analyze(params, System.nanoTime() - queued)).get();
+				respond(exchange, 200, result);
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof IllegalArgumentException)) {
+					throw new IOException(e.getCause());
+				}
+				respond(exchange, 400, "{\"error\":\"" + e.getCause().getMessage().replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+			} catch (InterruptedException | RejectedExecutionException e) {
+				respond(exchange, 503, "{\"error\":\"shutting down\"}");
+			} finally {
+				admitted.release();
+			}
+		}
+	}
+
+	/**
+	 * Searches the requested position, on an engine thread
+	 * @param params the request parameters
+	 * @param queueNanos how long the request waited for an engine thread
+	 * @return the JSON response
+	 * @throws IllegalArgumentException if the position or a limit is bad
+	 * @throws InterruptedException if the server is stopped
+	 */
+	private String analyze(Map<String, String> params, long queueNanos) throws InterruptedException {
+		int depth = Integer.parseInt(params.getOrDefault("depth", String.valueOf(engine.getSettings().getLimits().getDepth())));
+		long time = Long.parseLong(params.getOrDefault("time", "0"));
+		long nodes = Long.parseLong(params.getOrDefault("nodes", "0"));
+		if (depth < 1 || depth > MAX_DEPTH || time < 0 || nodes < 0) {
+			throw new IllegalArgumentException("limits out of range");
+		}
+		Position position = Position.parse(boardSize, params.getOrDefault("moves", ""));
+		ConcurrentEngine.Result result = engine.search(position, new SearchLimits(depth, time, nodes));
+		SearchStats stats = result.getStats();
+		StringBuilder pv = new StringBuilder();
+		for (int col : result.getPrincipalVariation()) {
+			pv.append(pv.length() == 0 ? "" : ",").append(col);
+		}
+		return String.format(Locale.ROOT, "{\"move\":%d,\"score\":%d,\"depth\":%d,\"nodes\":%d,\"millis\":%.3f,"
+				+ "\"queueMillis\":%.3f,\"source\":\"%s\",\"pv\":[%s]}",
+				result.getCol(), stats.getScore(), stats.getDepth(), stats.getNodes(), stats.getWallMillis(),
+				queueNanos / 1e6, stats.getSource(), pv);
+	}
+
+	/**
+	 * Reads the parameters of a request from its query string and, for a POST, its form body
+	 * @param exchange the request
+	 * @return the parameters by name
+	 * @throws IOException if the body can't be read
+	 */
+	private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+		Map<String, String> params = new HashMap<>();
+		parse(exchange.getRequestURI().getRawQuery(), params);
+		if ("POST".equals(exchange.getRequestMethod())) {
+			parse(new String(exchange.getRequestBody().readNBytes(4096), StandardCharsets.UTF_8), params);
+		}
+		return params;
+	}
+
+	/**
+	 * Parses name=value pairs separated by &amp;
+	 * @param query the encoded pairs, may be null
+	 * @param params map the pairs are put in
+	 */
+	private static void parse(String query, Map<String, String> params) {
+		if (query == null) {
+			return;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8).trim());
+			}
+		}
+	}
+
+	/**
+	 * Sends a JSON response
+	 * @param exchange the request
+	 * @param status the HTTP status
+	 * @param json the body
+	 * @throws IOException if the response can't be sent
+	 */
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores a file of positions offline on every core. Positions are streamed from the input and
+ * results streamed to the output, one line per position in input order, so memory stays bounded
+ * no matter how big the file is: only a window of positions a few times the thread count is in
+ * flight at once. The output is flushed as it goes, and rerunning the same command after an
+ * interruption skips the positions that already have a result line. Every position is searched
+ * from a cleared transposition table, so a result doesn't depend on the positions before it and
+ * the output is the same for any thread count and across resumes.
+ * <pre>
+ * usage: BatchEvaluator -in positions [-out results.tsv] [-format text|binary] [-threads cores]
+ *                       [-engine spec] [-board 6x7x4] [-hash 4]
+ *
+ * text input:   one position per line, the columns played from the empty gameboard as digits
+ * binary input: one position per 8 bytes, a big-endian key from Gameboard.getPositionKey
+ * output:       position TAB move TAB score TAB depth TAB nodes, or position TAB error TAB reason
+ * </pre>
+ * The format defaults to binary for files ending in .bin. See EngineSettings for the engine spec.
+ * -hash is the transposition table size of each thread in megabytes; it is cleared before every
+ * position, so keep it only as big as one search needs.
+ */
+public class BatchEvaluator {
+	/** Positions in flight per thread, enough to keep every thread busy while results are written */
+	private static final int WINDOW_PER_THREAD = 16;
+
+	/** Results written between flushes */
+	private static final int FLUSH_INTERVAL = 256;
+
+	/** Settings of every engine */
+	private final EngineSettings settings;
+
+	/** Number of threads searching */
+	private final int threads;
+
+	/** The gameboard and AIPlayer of each thread */
+	private final ThreadLocal<AIPlayer> engines;
+
+	/**
+	 * Creates a batch evaluator
+	 * @param settings settings of every engine
+	 * @param boardSize size of the gameboard, see Gameboard.parse
+	 * @param threads number of threads searching
+	 * @param tableBytes transposition table size of each thread
+	 */
+	public BatchEvaluator(EngineSettings settings, String boardSize, int threads, long tableBytes) {
+		Gameboard.parse(boardSize);	//fail here rather than on every position
+		this.settings = settings;
+		this.threads = threads;
+		this.engines = ThreadLocal.withInitial(() -> {
+			AIPlayer ai = new AIPlayer(Gameboard.parse(boardSize), new TranspositionTable(tableBytes, false));
+			settings.apply(ai);
+			ai.setThreads(1);	//the batch is already spread over every core
+			return ai;
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path in = null;
+		Path out = Paths.get("results.tsv");
+		String format = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String engine = "";
+		String board = "6x7x4";
+		long hashMegabytes = 4;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-in": in = Paths.get(args[i + 1]); break;
+				case "-out": out = Paths.get(args[i + 1]); break;
+				case "-format": format = args[i + 1]; break;
+				case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+				case "-engine": engine = args[i + 1]; break;
+				case "-board": board = args[i + 1]; break;
+				case "-hash": hashMegabytes = Long.parseLong(args[i + 1]); break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		if (in == null) {
+			throw new IllegalArgumentException("no input file, use -in");
+		}
+		boolean binary = format == null ? in.toString().endsWith(".bin") : format.equals("binary");
+		BatchEvaluator evaluator = new BatchEvaluator(EngineSettings.parse(engine), board, threads, hashMegabytes << 20);
+		long start = System.nanoTime();
+		long[] counts = evaluator.run(in, binary, out);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("evaluated %d positions in %.1f s (%.1f positions/s), skipped %d already done%n",
+				counts[1], seconds, counts[1] / seconds, counts[0]);
+	}
+
+	/**
+	 * Evaluates every position of the input that doesn't have a result in the output yet
+	 * @param in the position file
+	 * @param binary true if the positions are 8-byte keys, false for lines of moves
+	 * @param out the result file, appended to if it exists
+	 * @return the number of positions skipped because they were already done, and the number evaluated
+	 * @throws IOException if a file can't be read or written
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public long[] run(Path in, boolean binary, Path out) throws IOException, InterruptedException {
+		long done = resume(out);
+		long evaluated = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<String>> window = new ArrayDeque<>();
+		try (PositionReader positions = binary ? new KeyReader(in) : new LineReader(in);
+				Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			for (long skipped = 0; skipped < done; skipped++) {
+				if (positions.next() == null) {
+					throw new IOException(out + " has more results than " + in + " has positions");
+				}
+			}
+			String position;
+			while ((position = positions.next()) != null) {
+				final String next = position;
+				window.add(pool.submit(() -> evaluate(next, binary)));
+				if (window.size() >= threads * WINDOW_PER_THREAD) {
+					write(writer, window.poll(), ++evaluated);
+				}
+			}
+			while (!window.isEmpty()) {
+				write(writer, window.poll(), ++evaluated);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return new long[] {done, evaluated};
+	}
+
+	/**
+	 * Waits for the oldest result in the window and writes it, flushing every FLUSH_INTERVAL results
+	 * @param writer the result file
+	 * @param result the oldest result
+	 * @param count number of results written by this run, including this one
+	 * @throws IOException if the result can't be written or the evaluation failed unexpectedly
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	private static void write(Writer writer, Future<String> result, long count) throws IOException, InterruptedException {
+		try {
+			writer.write(result.get());
+		} catch (ExecutionException e) {
+			throw new IOException("evaluation failed", e.getCause());
+		}
+		writer.write('\n');
+		if (count % FLUSH_INTERVAL == 0) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Evaluates one position on the calling thread's engine
+	 * @param position the moves as digits, or the key in hex for binary input
+	 * @param binary true if the position is a key
+	 * @return the result line without its line break
+	 */
+	private String evaluate(String position, boolean binary) {
+		AIPlayer ai = engines.get();
+		Gameboard board = ai.getBoard();
+		try {
+			board.clear();
+			if (binary) {
+				board.setPosition(Long.parseUnsignedLong(position, 16));
+			} else {
+				board.playMoves(position);
+			}
+			if (board.winnerFound() || board.isFull()) {
+				return position + "\terror\tthe game is over";
+			}
+		} catch (IllegalArgumentException e) {
+			return position + "\terror\t" + e.getMessage();
+		}
+		ai.newGame();
+		Move move = ai.getBestMove(board.getTurn(), settings.getLimits());
+		return position + "\t" + move.getCol() + "\t" + ai.getBestScore() + "\t" + ai.getDepthReached()
+				+ "\t" + ai.getNodes();
+	}
+
+	/**
+	 * Counts the results already in the output file, cutting off a last line that was only partly
+	 * written when the previous run was interrupted
+	 * @param out the result file
+	 * @return the number of complete result lines, 0 if the file doesn't exist
+	 * @throws IOException if the file can't be read or truncated
+	 */
+	static long resume(Path out) throws IOException {
+		if (!Files.exists(out)) {
+			return 0;
+		}
+		long lines = 0;
+		long complete = 0;	//length of the file up to the end of the last complete line
+		long offset = 0;
+		try (InputStream input = Files.newInputStream(out)) {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == '\n') {
+						lines++;
+						complete = offset + i + 1;
+					}
+				}
+				offset += read;
+			}
+		}
+		if (complete < offset) {
+			try (RandomAccessFile file = new RandomAccessFile(out.toFile(), "rw")) {
+				file.setLength(complete);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * A stream of positions read one at a time
+	 */
+	private interface PositionReader extends AutoCloseable {
+		/**
+		 * Reads the next position
+		 * @return the position, or null at the end of the file
+		 * @throws IOException if the file can't be read
+		 */
+		String next() throws IOException;
+
+		@Override
+		void close() throws IOException;
+	}
+
+	/**
+	 * Reads positions written as lines of moves. Blank lines are skipped.
+	 */
+	private static class LineReader implements PositionReader {
+		/** The position file */
+		private final BufferedReader reader;
+
+		LineReader(Path file) throws IOException {
+			reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String next() throws IOException {
+			String line;
+			do {
+				line = reader.readLine();
+			} while (line != null && line.isBlank());
+			return line == null ? null : line.trim();
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads positions written as 8-byte keys, handing them on in hex
+	 */
+	private static class KeyReader implements PositionReader {
+		/** The position file */
+		private final DataInputStream input;
+
+		KeyReader(Path file) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+		}
+
+		@Override
+		public String next() throws IOException {
+			try {
+				return Long.toHexString(input.readLong());
+			} catch (EOFException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Interpolator;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
+
+/**
+ * Draws the pieces of a gameboard on one Canvas instead of adding a node per piece. Each player's
+ * piece is rendered into an image once, and an AnimationTimer moves the falling pieces and redraws
+ * the canvas at most once a frame, only when something changed. How fast moves arrive has no
+ * effect on the frame rate: in fast-forward mode pieces land as soon as they're dropped, so any
+ * number of moves between two frames cost one redraw.
+ */
+public class BoardCanvas {
+	/** Seconds a piece takes to fall into place, the same as the piece nodes in Main */
+	private static final double DROP_SECONDS = 0.5;
+
+	/** The canvas the pieces are drawn on */
+	private final Canvas canvas;
+
+	/** Number of rows of the gameboard */
+	private final int rows;
+
+	/** Distance between the centers of neighboring holes */
+	private final double cellSize;
+
+	/** Radius of a piece */
+	private final double discRadius;
+
+	/** The image of each player's pieces, indexed by player number */
+	private final Image[] pieceImages;
+
+	/** Each player's piece rendered at its drawn size, null until its image has loaded */
+	private final Image[] discs = new Image[3];
+
+	/** The player of each landed piece, 0 for an empty space, indexed by column and row */
+	private final int[][] cells;
+
+	/** Pieces still falling, in the order they were dropped */
+	private final List<Drop> falling = new ArrayList<>();
+
+	/** Moves the falling pieces and redraws the canvas every frame */
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			frame(now);
+		}
+	};
+
+	/** True if pieces land as soon as they're dropped */
+	private boolean fastForward;
+
+	/** True if the canvas is out of date */
+	private boolean dirty = true;
+
+	/** Number of frames drawn */
+	private long frames;
+
+	/**
+	 * A piece falling into place
+	 */
+	private static class Drop {
+		/** Column the piece falls down */
+		final int col;
+
+		/** Row the piece lands in */
+		final int row;
+
+		/** Player the piece belongs to */
+		final int player;
+
+		/** Called once the piece has landed, may be null */
+		final Runnable landed;
+
+		/** Time of the first frame the piece was drawn in, -1 until then */
+		long startNanos = -1;
+
+		/** Part of the way down the piece has fallen, from 0 to 1 */
+		double progress;
+
+		Drop(int col, int row, int player, Runnable landed) {
+			this.col = col;
+			this.row = row;
+			this.player = player;
+			this.landed = landed;
+		}
+	}
+
+	/**
+	 * Creates a canvas the size of the gameboard shape in Main
+	 * @param rows number of rows of the gameboard
+	 * @param cols number of columns of the gameboard
+	 * @param cellSize distance between the centers of neighboring holes
+	 * @param discRadius radius of a piece
+	 * @param playerOneImage image of player one's pieces
+	 * @param playerTwoImage image of player two's pieces
+	 */
+	public BoardCanvas(int rows, int cols, double cellSize, double discRadius, Image playerOneImage, Image playerTwoImage) {
+		this.rows = rows;
+		this.cellSize = cellSize;
+		this.discRadius = discRadius;
+		this.pieceImages = new Image[] {null, playerOneImage, playerTwoImage};
+		this.cells = new int[cols][rows];
+		canvas = new Canvas(cols * cellSize + 45, rows * cellSize + 50);
+		canvas.setMouseTransparent(true);
+	}
+
+	/**
+	 * Gets the canvas to add to the scene
+	 * @return the canvas
+	 */
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	/**
+	 * Starts drawing, call on the JavaFX Application Thread
+	 */
+	public void start() {
+		timer.start();
+	}
+
+	/**
+	 * Stops drawing, call on the JavaFX Application Thread
+	 */
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Drops a piece into place. Call on the JavaFX Application Thread.
+	 * @param col column of the piece
+	 * @param row row the piece lands in, 0 is the bottom row
+	 * @param player player the piece belongs to
+	 * @param landed called on the JavaFX Application Thread once the piece has landed, may be null
+	 */
+	public void drop(int col, int row, int player, Runnable landed) {
+		Drop drop = new Drop(col, row, player, landed);
+		if (fastForward) {
+			land(drop);
+		} else {
+			falling.add(drop);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Removes one piece, for a move that was taken back. Call on the JavaFX Application Thread.
+	 * @param col column of the piece
+	 * @param row row of the piece, 0 is the bottom row
+	 */
+	public void lift(int col, int row) {
+		cells[col][row] = 0;
+		falling.removeIf(drop -> drop.col == col && drop.row == row);
+		dirty = true;
+	}
+
+	/**
+	 * Removes every piece, including falling ones, whose landed callbacks are never called
+	 */
+	public void clear() {
+		for (int[] column : cells) {
+			Arrays.fill(column, 0);
+		}
+		falling.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Turns fast-forward mode on or off. Turning it on lands the pieces that are still falling.
+	 * @param fastForward true to land pieces as soon as they're dropped
+	 */
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+		if (fastForward && !falling.isEmpty()) {
+			List<Drop> landing = new ArrayList<>(falling);
+			falling.clear();
+			for (Drop drop : landing) {
+				land(drop);
+			}
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Checks if pieces land as soon as they're dropped
+	 * @return true in fast-forward mode
+	 */
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+	/**
+	 * Gets the number of frames drawn so far
+	 * @return the frame count
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Moves the falling pieces and redraws the canvas if anything changed
+	 * @param now the time of the frame in nanoseconds
+	 */
+	private void frame(long now) {
+		List<Drop> landed = null;
+		for (Iterator<Drop> it = falling.iterator(); it.hasNext();) {
+			Drop drop = it.next();
+			if (drop.startNanos < 0) {
+				drop.startNanos = now;
+			}
+			double t = (now - drop.startNanos) / 1e9 / DROP_SECONDS;
+			if (t >= 1) {
+				it.remove();
+				if (landed == null) {
+					landed = new ArrayList<>();
+				}
+				landed.add(drop);
+			} else {
+				drop.progress = Interpolator.EASE_BOTH.interpolate(0.0, 1.0, t);
+			}
+			dirty = true;
+		}
+		if (landed != null) {
+			for (Drop drop : landed) {
+				land(drop);	//may drop the next piece
+			}
+		}
+		if (dirty) {
+			draw();
+		}
+	}
+
+	/**
+	 * Puts a piece in its space and tells whoever dropped it
+	 * @param drop the piece
+	 */
+	private void land(Drop drop) {
+		cells[drop.col][drop.row] = drop.player;
+		if (drop.landed != null) {
+			drop.landed.run();
+		}
+	}
+
+	/**
+	 * Redraws every piece
+	 */
+	private void draw() {
+		GraphicsContext g = canvas.getGraphicsContext2D();
+		g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		dirty = false;
+		for (int col = 0; col < cells.length; col++) {
+			for (int row = 0; row < rows; row++) {
+				if (cells[col][row] != 0) {
+					drawDisc(g, cells[col][row], col, y(row));
+				}
+			}
+		}
+		for (Drop drop : falling) {
+			drawDisc(g, drop.player, drop.col, y(drop.row) * drop.progress);
+		}
+		frames++;
+	}
+
+	/**
+	 * Draws one piece
+	 * @param g the canvas's graphics context
+	 * @param player player the piece belongs to
+	 * @param col column of the piece
+	 * @param y distance from the top of the canvas to the top of the piece
+	 */
+	private void drawDisc(GraphicsContext g, int player, int col, double y) {
+		double x = col * cellSize + 20;
+		Image disc = disc(player);
+		if (disc != null) {
+			g.drawImage(disc, x, y);
+		} else {
+			g.setFill(new ImagePattern(pieceImages[player]));
+			g.fillOval(x, y, 2 * discRadius, 2 * discRadius);
+			dirty |= !pieceImages[player].isError();	//draw again once the image has loaded
+		}
+	}
+
+	/**
+	 * Gets a player's piece rendered at its drawn size, rendering it the first time it's needed
+	 * @param player the player
+	 * @return the rendered piece, or null while the piece image is still loading
+	 */
+	private Image disc(int player) {
+		Image image = pieceImages[player];
+		if (discs[player] == null && image.getProgress() >= 1 && !image.isError()) {
+			Canvas piece = new Canvas(2 * discRadius, 2 * discRadius);
+			piece.getGraphicsContext2D().setFill(new ImagePattern(image));
+			piece.getGraphicsContext2D().fillOval(0, 0, 2 * discRadius, 2 * discRadius);
+			SnapshotParameters parameters = new SnapshotParameters();
+			parameters.setFill(Color.TRANSPARENT);
+			discs[player] = piece.snapshot(parameters, null);
+		}
+		return discs[player];
+	}
+
+	/**
+	 * Gets where a piece in a row is drawn
+	 * @param row the row, 0 is the bottom row
+	 * @return distance from the top of the canvas to the top of the piece
+	 */
+	private double y(int row) {
+		return (rows - 1 - row) * cellSize + 20;
+	}
+}
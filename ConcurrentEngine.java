@@ -0,0 +1,177 @@
+package main;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A thread-safe engine that any number of threads can ask for moves at once, for any number of
+ * games. Games are passed in as immutable Positions, so the engine keeps nothing per game. Each
+ * search borrows a searcher (an AIPlayer and the gameboard it searches) from a pool, sets the
+ * position up on it and returns it when done. At most maxSearchers searches run at once and
+ * further callers wait for a free searcher, so memory stays at one shared transposition table
+ * plus maxSearchers searchers no matter how many games or threads there are. Searchers are
+ * created the first time they're needed.
+ * <p>
+ * All searchers share the transposition table, which is lock-free, so a search benefits from
+ * what earlier searches of the same game found, and a result can depend on the other games
+ * searched before it.
+ */
+public class ConcurrentEngine {
+	/** Settings every searcher is created with */
+	private final EngineSettings settings;
+
+	/** Size of the gameboard, see Gameboard.parse */
+	private final String boardSize;
+
+	/** Transposition table shared by every searcher */
+	private final TranspositionTable table;
+
+	/** Permits for searches, one per searcher */
+	private final Semaphore searchers;
+
+	/** Searchers not in use */
+	private final ConcurrentLinkedQueue<AIPlayer> idle = new ConcurrentLinkedQueue<>();
+
+	/** Opening book of every searcher, null for none */
+	private volatile OpeningBook openingBook;
+
+	/** Metrics every search is recorded in, null to not record */
+	private volatile EngineMetrics metrics;
+
+	/**
+	 * The answer to one search
+	 */
+	public static class Result {
+		/** Column of the best move */
+		private final int col;
+
+		/** Statistics of the search */
+		private final SearchStats stats;
+
+		/** The best move followed by the expected line of play */
+		private final int[] principalVariation;
+
+		Result(int col, SearchStats stats, int[] principalVariation) {
+			this.col = col;
+			this.stats = stats;
+			this.principalVariation = principalVariation;
+		}
+
+		/**
+		 * Gets the column of the best move
+		 * @return the column
+		 */
+		public int getCol() {
+			return col;
+		}
+
+		/**
+		 * Gets the statistics of the search, including its score and depth
+		 * @return the statistics
+		 */
+		public SearchStats getStats() {
+			return stats;
+		}
+
+		/**
+		 * Gets the best move followed by the line of play both players are expected to follow
+		 * @return the columns of the line
+		 */
+		public int[] getPrincipalVariation() {
+			return principalVariation.clone();
+		}
+	}
+
+	/**
+	 * Creates an engine
+	 * @param settings settings of every searcher, see EngineSettings
+	 * @param boardSize size of the gameboard, see Gameboard.parse
+	 * @param tableBytes memory budget of the shared transposition table
+	 * @param maxSearchers number of searches that can run at once
+	 */
+	public ConcurrentEngine(EngineSettings settings, String boardSize, long tableBytes, int maxSearchers) {
+		Gameboard.parse(boardSize);	//fail here rather than on the first search
+		this.settings = settings;
+		this.boardSize = boardSize;
+		this.table = new TranspositionTable(tableBytes, false);
+		this.searchers = new Semaphore(maxSearchers, true);
+	}
+
+	/**
+	 * Sets the opening book every searcher plays from
+	 * @param openingBook the book, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+
+	/**
+	 * Sets the metrics every search is recorded in
+	 * @param metrics the metrics, or null to stop recording
+	 */
+	public void setMetrics(EngineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the settings every searcher is created with
+	 * @return the settings
+	 */
+	public EngineSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Gets the size of the gameboard the engine plays on
+	 * @return the size as Gameboard.parse reads it
+	 */
+	public String getBoardSize() {
+		return boardSize;
+	}
+
+	/**
+	 * Finds the best move in a position within the limits of the engine settings
+	 * @param position the position, the game must not be over
+	 * @return the best move and how it was found
+	 * @throws IllegalArgumentException if the position is for another gameboard size, has an
+	 * illegal move or the game is over
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for a searcher
+	 */
+	public Result search(Position position) throws InterruptedException {
+		return search(position, settings.getLimits());
+	}
+
+	/**
+	 * Finds the best move in a position. Blocks while every searcher is in use.
+	 * @param position the position, the game must not be over
+	 * @param limits the depth, time and node limits for the search
+	 * @return the best move and how it was found
+	 * @throws IllegalArgumentException if the position is for another gameboard size, has an
+	 * illegal move or the game is over
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for a searcher
+	 */
+	public Result search(Position position, SearchLimits limits) throws InterruptedException {
+		searchers.acquire();
+		AIPlayer ai = idle.poll();
+		try {
+			if (ai == null) {
+				ai = new AIPlayer(Gameboard.parse(boardSize), table);
+				settings.apply(ai);
+			}
+			ai.setOpeningBook(openingBook);
+			ai.setMetrics(metrics);
+			Gameboard board = ai.getBoard();
+			position.setUp(board);
+			if (board.winnerFound() || board.isFull()) {
+				throw new IllegalArgumentException("the game is over");
+			}
+			Move move = ai.getBestMove(board.getTurn(), limits);
+			return new Result(move.getCol(), ai.getLastStats(), ai.getPrincipalVariation());
+		} finally {
+			if (ai != null) {
+				idle.add(ai);
+			}
+			searchers.release();
+		}
+	}
+}
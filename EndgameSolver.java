@@ -0,0 +1,381 @@
+package main;
+
+/**
+ * Exact solver for late positions. Runs a negamax on its own copy of the gameboard's bitboards
+ * and narrows the score down with null-window probes. A score is from the point of view of the
+ * player to move: 0 is a draw, a win is positive and a loss negative, and the sooner the game
+ * ends the bigger the score (a win with n of the player's own pieces left to play scores n + 1).
+ * Only the moves that don't hand the opponent an immediate win are searched, threats first.
+ */
+public class EndgameSolver {
+	/** Number of rows of the gameboards this solver can solve */
+	private final int rows;
+
+	/** Number of columns of the gameboards this solver can solve */
+	private final int cols;
+
+	/** Bits per column in the bitboards, rows + 1 */
+	private final int colHeight;
+
+	/** Number of pieces in a row needed to win */
+	private final int length;
+
+	/** Bitboard with the bottom space of every column set */
+	private final long bottomMask;
+
+	/** Bitboard with every space of the gameboard set */
+	private final long boardMask;
+
+	/** Columns in the order they are tried when their threat counts are equal, center first */
+	private final int[] columnOrder;
+
+	/** Moves being ordered at each piece count, so ordering doesn't allocate */
+	private final long[][] orderedMoves;
+
+	/** Threat counts of the moves being ordered at each piece count */
+	private final int[][] orderedThreats;
+
+	/** Keys of the positions in the table */
+	private final long[] tableKeys;
+
+	/** Upper bound of each position in the table, offset so that 0 means empty */
+	private final byte[] tableValues;
+
+	/** Shift applied to a hashed key to find its table slot */
+	private final int tableShift;
+
+	/** Pieces of the player to move */
+	private long current;
+
+	/** Every occupied space */
+	private long mask;
+
+	/** Number of pieces on the gameboard */
+	private int moves;
+
+	/** Nodes visited by the last solve */
+	private long nodes;
+
+	/** Time the last solve took in nanoseconds */
+	private long solveNanos;
+
+	/** Set when a running solve has to stop, safe to set from any thread, until resume */
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a solver for the standard gameboard with a table of 2^22 positions (about 36 MB)
+	 */
+	public EndgameSolver() {
+		this(6, 7, 4, 22);
+	}
+
+	/**
+	 * Creates a solver for a gameboard size
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 * @param length number of pieces in a row needed to win
+	 * @param tableBits the table holds 2^tableBits positions
+	 * @throws IllegalArgumentException if the gameboard is too big for bitboards
+	 */
+	public EndgameSolver(int rows, int cols, int length, int tableBits) {
+		if ((rows + 1) * cols > 64) {
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " gameboard doesn't fit in a bitboard");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.colHeight = rows + 1;
+		this.length = length;
+		long bottom = 0;
+		for (int col = 0; col < cols; col++) {
+			bottom |= 1L << (col * colHeight);
+		}
+		this.bottomMask = bottom;
+		this.boardMask = bottom * ((1L << rows) - 1);
+		this.columnOrder = new int[cols];
+		for (int i = 0; i < cols; i++) {
+			columnOrder[i] = cols / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+		}
+		this.orderedMoves = new long[rows * cols + 1][cols];
+		this.orderedThreats = new int[rows * cols + 1][cols];
+		this.tableKeys = new long[1 << tableBits];
+		this.tableValues = new byte[1 << tableBits];
+		this.tableShift = 64 - tableBits;
+	}
+
+	/**
+	 * Gets the number of nodes the last solve visited
+	 * @return the node count
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets how long the last solve took
+	 * @return the solve time in milliseconds
+	 */
+	public double getSolveMillis() {
+		return solveNanos / 1e6;
+	}
+
+	/**
+	 * Stops a running solve as soon as possible. The stopped solve's result must not be used.
+	 * Every solve until resume is called is stopped too.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Lets solves run again after stop. Call it before the solve is started, not on its thread,
+	 * so a stop that comes after resume isn't lost.
+	 */
+	public void resume() {
+		stopped = false;
+	}
+
+	/**
+	 * Checks whether stop was called since resume, so the last solve may not have finished
+	 * @return true if the last result can't be trusted
+	 */
+	public boolean wasStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Finds the best move of the player to move, the player whose turn it is by piece count.
+	 * @param board the gameboard to solve, nobody may have won on it yet
+	 * @param scores filled with the exact score of each column, Integer.MIN_VALUE for full columns
+	 * @return the column with the best score, or -1 if the gameboard is full
+	 */
+	public int bestMove(Gameboard board, int[] scores) {
+		long start = System.nanoTime();
+		load(board);
+		nodes = 0;
+		int best = -1;
+		for (int col : columnOrder) {
+			scores[col] = Integer.MIN_VALUE;
+			long move = (mask + bottomMask) & columnMask(col);
+			if ((move & boardMask) == 0) {
+				continue;
+			}
+			if ((winningSpaces(current, mask) & move) != 0) {
+				scores[col] = (rows * cols + 1 - moves) / 2;
+			} else {
+				play(move);
+				scores[col] = -solve();
+				undo(move);
+			}
+			if (best < 0 || scores[col] > scores[best]) {
+				best = col;
+			}
+		}
+		solveNanos = System.nanoTime() - start;
+		return best;
+	}
+
+	/**
+	 * Solves a position exactly
+	 * @param board the gameboard to solve, nobody may have won on it yet
+	 * @return the score of the position for the player to move
+	 */
+	public int solve(Gameboard board) {
+		long start = System.nanoTime();
+		load(board);
+		nodes = 0;
+		int score = solve();
+		solveNanos = System.nanoTime() - start;
+		return score;
+	}
+
+	/**
+	 * Copies a gameboard's position into the solver
+	 * @param board the gameboard to copy
+	 */
+	private void load(Gameboard board) {
+		moves = board.getTotalMoves();
+		mask = board.getMask();
+		current = board.getBitboard(moves % 2 + 1);
+	}
+
+	/**
+	 * Solves the loaded position by narrowing the range of possible scores with null-window
+	 * searches, each of which only answers whether the score is above a value.
+	 * @return the score of the position for the player to move
+	 */
+	private int solve() {
+		if ((winningSpaces(current, mask) & possible()) != 0) {
+			return (rows * cols + 1 - moves) / 2;
+		}
+		int min = -(rows * cols - moves) / 2;
+		int max = (rows * cols + 1 - moves) / 2;
+		while (min < max && !stopped) {
+			int med = min + (max - min) / 2;
+			//probe closer to 0 first, most positions end close to a draw
+			if (med <= 0 && min / 2 < med) {
+				med = min / 2;
+			} else if (med >= 0 && max / 2 > med) {
+				med = max / 2;
+			}
+			int r = negamax(med, med + 1);
+			if (r <= med) {
+				max = r;
+			} else {
+				min = r;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Negamax with alpha-beta pruning. Assumes the player to move can't win with their next move.
+	 * @param alpha lower bound of the window
+	 * @param beta upper bound of the window
+	 * @return the exact score if it is inside the window, otherwise a bound on the wrong side of it
+	 */
+	private int negamax(int alpha, int beta) {
+		nodes++;
+		if ((nodes & 1023) == 0 && stopped) {
+			return 0;
+		}
+		long next = nonLosingMoves();
+		if (next == 0) {	//every move lets the opponent win right away
+			return -(rows * cols - moves) / 2;
+		}
+		if (moves >= rows * cols - 2) {	//neither player can win with the last two pieces
+			return 0;
+		}
+
+		int min = -(rows * cols - 2 - moves) / 2;	//the opponent can't win with their next move
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
+		int max = (rows * cols - 1 - moves) / 2;	//the player to move can't win with this move
+		long key = current + mask + bottomMask;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> tableShift);
+		if (tableKeys[slot] == key && tableValues[slot] != 0) {
+			max = tableValues[slot] + minScore() - 1;
+		}
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta) {
+				return beta;
+			}
+		}
+
+		//order the moves by how many winning spaces they leave, ties go to the center
+		long[] ordered = orderedMoves[moves];
+		int[] threats = orderedThreats[moves];
+		int count = 0;
+		for (int col : columnOrder) {
+			long move = next & columnMask(col);
+			if (move == 0) {
+				continue;
+			}
+			int score = Long.bitCount(winningSpaces(current | move, mask | move));
+			int j = count++;
+			while (j > 0 && threats[j - 1] < score) {
+				ordered[j] = ordered[j - 1];
+				threats[j] = threats[j - 1];
+				j--;
+			}
+			ordered[j] = move;
+			threats[j] = score;
+		}
+
+		for (int i = 0; i < count; i++) {
+			play(ordered[i]);
+			int score = -negamax(-beta, -alpha);
+			undo(ordered[i]);
+			if (score >= beta) {
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+		if (!stopped) {
+			tableKeys[slot] = key;
+			tableValues[slot] = (byte) (alpha - minScore() + 1);
+		}
+		return alpha;
+	}
+
+	/**
+	 * Lowest possible score on this gameboard size, used to store scores in the table as bytes
+	 * @return the minimum score
+	 */
+	private int minScore() {
+		return -(rows * cols) / 2 + 3;
+	}
+
+	/**
+	 * Plays a move for the player to move and hands the turn to the opponent
+	 * @param move bitboard with only the space being played set
+	 */
+	private void play(long move) {
+		current ^= mask;
+		mask |= move;
+		moves++;
+	}
+
+	/**
+	 * Undoes a move played by play
+	 * @param move the same bitboard passed to play
+	 */
+	private void undo(long move) {
+		mask ^= move;
+		current ^= mask;
+		moves--;
+	}
+
+	/**
+	 * Gets the spaces where the player to move can drop a piece
+	 * @return bitboard of the lowest empty space of every column that isn't full
+	 */
+	private long possible() {
+		return (mask + bottomMask) & boardMask;
+	}
+
+	/**
+	 * Gets the moves that don't let the opponent win with their next move. If the opponent has a
+	 * winning space that can be played right now it has to be blocked, and two of them can't be.
+	 * A move directly under an opponent's winning space is never safe.
+	 * @return bitboard of the safe moves, 0 if there are none
+	 */
+	private long nonLosingMoves() {
+		long possible = possible();
+		long opponentWins = winningSpaces(current ^ mask, mask);
+		long forced = possible & opponentWins;
+		if (forced != 0) {
+			if ((forced & (forced - 1)) != 0) {
+				return 0;
+			}
+			possible = forced;
+		}
+		return possible & ~(opponentWins >>> 1);
+	}
+
+	/**
+	 * Finds the empty spaces that would complete a line for a player, whether or not they can be
+	 * played yet, see Gameboard.winningSpaces
+	 * @param position the player's pieces
+	 * @param occupied every occupied space
+	 * @return bitboard of the winning spaces
+	 */
+	private long winningSpaces(long position, long occupied) {
+		return Gameboard.winningSpaces(position, occupied, boardMask, colHeight, length);
+	}
+
+	/**
+	 * Gets the bitboard of a whole column
+	 * @param col the column
+	 * @return bitboard with every space of the column set
+	 */
+	private long columnMask(int col) {
+		return ((1L << rows) - 1) << (col * colHeight);
+	}
+}
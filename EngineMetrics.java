@@ -0,0 +1,202 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live statistics of the moves of one or more AIPlayers, published as a JMX MBean named
+ * main:type=EngineMetrics,name=... An AIPlayer only collects them once setMetrics is called, so
+ * an engine without metrics pays nothing for them. Moves slower than the slow move threshold are
+ * logged as warnings, and every move can be logged as one line of key=value pairs.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+	/** Logger every move and slow move is written to */
+	private static final Logger LOG = Logger.getLogger(EngineMetrics.class.getName());
+
+	/** Name of the MBean, also put in every log line */
+	private final String name;
+
+	/** Moves slower than this are counted and logged as warnings, 0 for no threshold */
+	private volatile long slowMoveMillis = 1000;
+
+	/** True if every move is logged */
+	private volatile boolean logMoves;
+
+	/** Number of moves recorded */
+	private long moves;
+
+	/** Number of moves slower than slowMoveMillis */
+	private long slowMoves;
+
+	/** Wall-clock time of every move recorded, in milliseconds */
+	private double totalMillis;
+
+	/** Wall-clock time of the slowest move, in milliseconds */
+	private double maxMillis;
+
+	/** Nodes visited by every move recorded */
+	private long totalNodes;
+
+	/** Statistics of the last move, null if none were recorded */
+	private SearchStats last;
+
+	/**
+	 * Creates metrics that aren't published over JMX
+	 * @param name name put in every log line
+	 */
+	public EngineMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Creates metrics and publishes them with the platform MBean server. Metrics already published
+	 * under the same name are replaced. If publishing fails the metrics are still recorded and logged.
+	 * @param name name of the MBean
+	 * @return the metrics
+	 */
+	public static EngineMetrics register(String name) {
+		EngineMetrics metrics = new EngineMetrics(name);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("main:type=EngineMetrics,name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(metrics, objectName);
+		} catch (JMException e) {
+			LOG.warning("Could not register engine metrics " + name + ": " + e.getMessage());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Records the statistics of a move. Called by AIPlayer at the end of every getBestMove.
+	 * @param stats the statistics of the move
+	 */
+	void record(SearchStats stats) {
+		double millis = stats.getWallMillis();
+		boolean slow = slowMoveMillis > 0 && millis > slowMoveMillis;
+		synchronized (this) {
+			moves++;
+			totalMillis += millis;
+			maxMillis = Math.max(maxMillis, millis);
+			totalNodes += stats.getNodes();
+			if (slow) {
+				slowMoves++;
+			}
+			last = stats;
+		}
+		if (slow) {
+			LOG.warning("slow_move engine=" + name + " " + stats);
+		} else if (logMoves) {
+			LOG.info("move engine=" + name + " " + stats);
+		}
+	}
+
+	/**
+	 * Gets the statistics of the last move
+	 * @return the statistics, null if no moves were recorded
+	 */
+	public synchronized SearchStats getLast() {
+		return last;
+	}
+
+	@Override
+	public synchronized long getMoves() {
+		return moves;
+	}
+
+	@Override
+	public synchronized long getSlowMoves() {
+		return slowMoves;
+	}
+
+	@Override
+	public long getSlowMoveMillis() {
+		return slowMoveMillis;
+	}
+
+	@Override
+	public void setSlowMoveMillis(long slowMoveMillis) {
+		this.slowMoveMillis = slowMoveMillis;
+	}
+
+	@Override
+	public boolean isLogMoves() {
+		return logMoves;
+	}
+
+	@Override
+	public void setLogMoves(boolean logMoves) {
+		this.logMoves = logMoves;
+	}
+
+	@Override
+	public synchronized double getLastMoveMillis() {
+		return last == null ? 0 : last.getWallMillis();
+	}
+
+	@Override
+	public synchronized double getMaxMoveMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public synchronized double getAverageMoveMillis() {
+		return moves == 0 ? 0 : totalMillis / moves;
+	}
+
+	@Override
+	public synchronized String getLastSource() {
+		return last == null ? null : last.getSource();
+	}
+
+	@Override
+	public synchronized long getLastNodes() {
+		return last == null ? 0 : last.getNodes();
+	}
+
+	@Override
+	public synchronized double getLastNodesPerSecond() {
+		return last == null ? 0 : last.getNodesPerSecond();
+	}
+
+	@Override
+	public synchronized long getLastLeafEvaluations() {
+		return last == null ? 0 : last.getLeafEvaluations();
+	}
+
+	@Override
+	public synchronized int getLastDepth() {
+		return last == null ? 0 : last.getDepth();
+	}
+
+	@Override
+	public synchronized double getLastCutoffRate() {
+		return last == null ? 0 : last.getCutoffRate();
+	}
+
+	@Override
+	public synchronized double getLastTableHitRate() {
+		return last == null ? 0 : last.getTableHitRate();
+	}
+
+	@Override
+	public synchronized long getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public synchronized void reset() {
+		moves = 0;
+		slowMoves = 0;
+		totalMillis = 0;
+		maxMillis = 0;
+		totalNodes = 0;
+		last = null;
+	}
+}
@@ -0,0 +1,114 @@
+package main;
+
+/**
+ * Management interface of EngineMetrics, the live AIPlayer statistics shown in JMX consoles
+ * such as JConsole or VisualVM.
+ */
+public interface EngineMetricsMBean {
+	/**
+	 * Gets the number of moves recorded
+	 * @return the move count
+	 */
+	long getMoves();
+
+	/**
+	 * Gets the number of moves that took longer than the slow move threshold
+	 * @return the slow move count
+	 */
+	long getSlowMoves();
+
+	/**
+	 * Gets the time above which a move counts as slow and is logged as a warning
+	 * @return the threshold in milliseconds, 0 for none
+	 */
+	long getSlowMoveMillis();
+
+	/**
+	 * Sets the time above which a move counts as slow and is logged as a warning
+	 * @param slowMoveMillis the threshold in milliseconds, 0 for none
+	 */
+	void setSlowMoveMillis(long slowMoveMillis);
+
+	/**
+	 * Checks whether every move is written to the log
+	 * @return true if every move is logged
+	 */
+	boolean isLogMoves();
+
+	/**
+	 * Sets whether every move is written to the log as one line of key=value pairs
+	 * @param logMoves true to log every move
+	 */
+	void setLogMoves(boolean logMoves);
+
+	/**
+	 * Gets the wall-clock time of the last move
+	 * @return the time in milliseconds
+	 */
+	double getLastMoveMillis();
+
+	/**
+	 * Gets the wall-clock time of the slowest move
+	 * @return the time in milliseconds
+	 */
+	double getMaxMoveMillis();
+
+	/**
+	 * Gets the average wall-clock time of a move
+	 * @return the time in milliseconds, 0 if no moves were recorded
+	 */
+	double getAverageMoveMillis();
+
+	/**
+	 * Gets where the last move came from
+	 * @return "book", "tactics", "cache", "solver" or "search", null if no moves were recorded
+	 */
+	String getLastSource();
+
+	/**
+	 * Gets the nodes the last move visited
+	 * @return the node count
+	 */
+	long getLastNodes();
+
+	/**
+	 * Gets the search speed of the last move
+	 * @return nodes per second
+	 */
+	double getLastNodesPerSecond();
+
+	/**
+	 * Gets the leaf evaluations of the last move
+	 * @return the leaf count
+	 */
+	long getLastLeafEvaluations();
+
+	/**
+	 * Gets the depth the last move reached
+	 * @return the depth
+	 */
+	int getLastDepth();
+
+	/**
+	 * Gets the beta cutoff rate of the last move
+	 * @return the fraction of interior nodes that were cut off
+	 */
+	double getLastCutoffRate();
+
+	/**
+	 * Gets the transposition table hit rate of the last move
+	 * @return the fraction of table lookups that found the position
+	 */
+	double getLastTableHitRate();
+
+	/**
+	 * Gets the nodes visited by every move recorded
+	 * @return the node count
+	 */
+	long getTotalNodes();
+
+	/**
+	 * Clears every statistic, the settings are kept
+	 */
+	void reset();
+}
@@ -0,0 +1,386 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The engine as a process that speaks a line-based text protocol on stdin and stdout, modeled on
+ * UCI, so match managers and scripts can run it without the JavaFX game. It is part of the core
+ * module, which has no JavaFX dependency and starts in milliseconds.
+ * <pre>
+ * usage: EngineProtocol [-board 6x7x4] [-engine spec] [-hash 16] [-book file] [-cache file]
+ *
+ * uci                                  id and option lines, then uciok
+ * isready                              readyok, answered even while searching
+ * setoption name N value V             N is Board, Engine, Hash, Book or Cache, as the options above
+ * ucinewgame                           forget what earlier searches learned
+ * position startpos [moves c c ...]    the empty gameboard and the columns played since, from 0
+ * go [depth n] [movetime ms] [nodes n] [infinite]
+ *                                      search the position, the engine settings' limits by default
+ * stop                                 finish the search now
+ * quit                                 exit
+ *
+ * info depth d score cp s|mate n nodes n time ms nps n source s pv c c ...
+ * bestmove c                           c is none if the game is over
+ * info string message                  errors and other messages
+ * </pre>
+ * A search prints an info line after every completed iteration and ends with bestmove; a move from
+ * the book, the tactics, the cache or the solver gets a single info line. Scores are from the
+ * point of view of the player to move: mate n is a win in n of that player's moves, mate -n a loss.
+ * Commands other than isready and stop wait for a running search to finish. See EngineSettings
+ * for the engine spec and Gameboard.parse for the gameboard size; -hash is in megabytes.
+ */
+public class EngineProtocol {
+	/** Where responses are written */
+	private final PrintStream out;
+
+	/** Thread the searches run on, so commands can be read while searching */
+	private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "engine search");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** The running or last search, null before the first */
+	private Future<?> search;
+
+	/** Size of the gameboard, see Gameboard.parse */
+	private String boardSize = "6x7x4";
+
+	/** Settings of the engine */
+	private EngineSettings settings = EngineSettings.parse("");
+
+	/** Transposition table size in bytes */
+	private long hashBytes = AIPlayer.DEFAULT_TABLE_BYTES;
+
+	/** Opening book file, null for none */
+	private String bookFile;
+
+	/** Evaluation cache file, null for none */
+	private String cacheFile;
+
+	/** The open evaluation cache, null for none */
+	private EvaluationCache cache;
+
+	/** The engine, null until it's needed again after an option changed */
+	private AIPlayer ai;
+
+	/** The position to search */
+	private Position position = Position.start(boardSize);
+
+	/**
+	 * Creates the protocol handler
+	 * @param out where responses are written
+	 */
+	public EngineProtocol(PrintStream out) {
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws Exception {
+		EngineProtocol protocol = new EngineProtocol(System.out);
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-")) {
+				throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+			protocol.setOption(args[i].substring(1), args[i + 1]);
+		}
+		protocol.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Reads and carries out commands until quit or the end of the input
+	 * @param in the commands, one per line
+	 * @throws IOException if the input can't be read
+	 */
+	public void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] words = line.trim().split("\\s+");
+			try {
+				if (!command(words)) {
+					break;
+				}
+			} catch (IllegalArgumentException | IOException e) {
+				out.println("info string error: " + e.getMessage());
+			}
+		}
+		stopSearch();
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Carries out one command
+	 * @param words the words of the command line
+	 * @return false to quit
+	 * @throws IOException if a book or cache file can't be opened
+	 */
+	private boolean command(String[] words) throws IOException {
+		switch (words[0]) {
+			case "":
+				break;
+			case "uci":
+				out.println("id name Connect4");
+				out.println("id author Weston Minshull and Owen Clinton");
+				out.println("option name Board type string default 6x7x4");
+				out.println("option name Engine type string default " + EngineSettings.parse(""));
+				out.println("option name Hash type spin default " + (AIPlayer.DEFAULT_TABLE_BYTES >> 20) + " min 1 max 65536");
+				out.println("option name Book type string default <empty>");
+				out.println("option name Cache type string default <empty>");
+				out.println("uciok");
+				break;
+			case "isready":
+				out.println("readyok");
+				break;
+			case "setoption":
+				waitForSearch();
+				int value = indexOf(words, "value");
+				if (words.length < 3 || !words[1].equals("name") || value < 0) {
+					throw new IllegalArgumentException("expected setoption name N value V");
+				}
+				setOption(String.join(" ", java.util.Arrays.copyOfRange(words, 2, value)),
+						String.join(" ", java.util.Arrays.copyOfRange(words, value + 1, words.length)));
+				break;
+			case "ucinewgame":
+				waitForSearch();
+				if (ai != null) {
+					ai.newGame();
+				}
+				break;
+			case "position":
+				waitForSearch();
+				setPosition(words);
+				break;
+			case "go":
+				waitForSearch();
+				go(words);
+				break;
+			case "stop":
+				stopSearch();
+				break;
+			case "quit":
+				return false;
+			default:
+				throw new IllegalArgumentException("unknown command: " + words[0]);
+		}
+		return true;
+	}
+
+	/**
+	 * Changes an option. The engine is created again with the new options before the next search.
+	 * @param name Board, Engine, Hash, Book or Cache, in any case
+	 * @param value the new value, empty or &lt;empty&gt; for no book or cache
+	 * @throws IOException if the cache file can't be opened
+	 */
+	private void setOption(String name, String value) throws IOException {
+		boolean none = value.isEmpty() || value.equals("<empty>");
+		switch (name.toLowerCase()) {
+			case "board":
+				Gameboard.parse(value);
+				boardSize = value;
+				position = Position.start(boardSize);
+				break;
+			case "engine": settings = EngineSettings.parse(value); break;
+			case "hash": hashBytes = Long.parseLong(value) << 20; break;
+			case "book": bookFile = none ? null : value; break;
+			case "cache": cacheFile = none ? null : value; break;
+			default: throw new IllegalArgumentException("unknown option: " + name);
+		}
+		ai = null;
+	}
+
+	/**
+	 * Creates the engine with the current options if an option changed since it was last created
+	 * @throws IOException if the book or the cache can't be opened
+	 */
+	private void createEngine() throws IOException {
+		if (ai != null) {
+			return;
+		}
+		Gameboard board = Gameboard.parse(boardSize);
+		AIPlayer created = new AIPlayer(board, new TranspositionTable(hashBytes, false));
+		settings.apply(created);
+		if (bookFile != null) {
+			created.setOpeningBook(OpeningBook.open(Paths.get(bookFile)));
+		}
+		if (cache != null) {
+			cache.close();
+			cache = null;
+		}
+		if (cacheFile != null) {
+			cache = new EvaluationCache(Paths.get(cacheFile), board.rows, board.cols, board.length,
+					EvaluationCache.DEFAULT_BYTES);
+			created.setEvaluationCache(cache);
+		}
+		created.setIterationListener(stats -> info(created, stats));
+		ai = created;
+	}
+
+	/**
+	 * Reads a position command
+	 * @param words the words of the command line
+	 * @throws IllegalArgumentException if the position isn't startpos or a move is illegal
+	 */
+	private void setPosition(String[] words) {
+		if (words.length < 2 || !words[1].equals("startpos")) {
+			throw new IllegalArgumentException("expected position startpos [moves c c ...]");
+		}
+		Position next = Position.start(boardSize);
+		int moves = indexOf(words, "moves");
+		for (int i = moves < 0 ? words.length : moves + 1; i < words.length; i++) {
+			next = next.play(Integer.parseInt(words[i]));
+		}
+		next.setUp(Gameboard.parse(boardSize));	//report an illegal move now rather than on go
+		position = next;
+	}
+
+	/**
+	 * Reads a go command and starts the search on the search thread
+	 * @param words the words of the command line
+	 * @throws IOException if the book or the cache can't be opened
+	 */
+	private void go(String[] words) throws IOException {
+		createEngine();
+		SearchLimits defaults = settings.getLimits();
+		int depth = defaults.getDepth();
+		long timeMillis = defaults.getTimeMillis();
+		long nodes = defaults.getNodes();
+		for (int i = 1; i < words.length; i++) {
+			switch (words[i]) {
+				case "depth": depth = Integer.parseInt(valueOf(words, i++)); break;
+				case "movetime": timeMillis = Long.parseLong(valueOf(words, i++)); break;
+				case "nodes": nodes = Long.parseLong(valueOf(words, i++)); break;
+				case "infinite": depth = Integer.MAX_VALUE; timeMillis = 0; nodes = 0; break;
+				default: throw new IllegalArgumentException("unknown go limit: " + words[i]);
+			}
+		}
+		AIPlayer engine = ai;
+		Gameboard board = engine.getBoard();
+		position.setUp(board);
+		if (board.winnerFound() || board.isFull()) {
+			out.println("info string the game is over");
+			out.println("bestmove none");
+			return;
+		}
+		SearchLimits limits = new SearchLimits(depth, timeMillis, nodes);
+		engine.resume();	//here rather than on the search thread, so a stop read right after go isn't lost
+		search = searchThread.submit(() -> {
+			Move move = engine.getBestMove(board.getTurn(), limits);
+			SearchStats stats = engine.getLastStats();
+			if (!"search".equals(stats.getSource())) {
+				info(engine, stats);
+			}
+			out.println("bestmove " + (move == null ? "none" : move.getCol()));
+		});
+	}
+
+	/**
+	 * Writes an info line
+	 * @param engine the engine that searched
+	 * @param stats statistics of the search so far
+	 */
+	private void info(AIPlayer engine, SearchStats stats) {
+		Gameboard board = engine.getBoard();
+		StringBuilder line = new StringBuilder("info depth ").append(stats.getDepth())
+				.append(" score ").append(score(board, stats.getScore()))
+				.append(" nodes ").append(stats.getNodes())
+				.append(" time ").append(Math.round(stats.getWallMillis()))
+				.append(" nps ").append(Math.round(stats.getNodesPerSecond()))
+				.append(" source ").append(stats.getSource())
+				.append(" pv");
+		for (int col : engine.getPrincipalVariation()) {
+			line.append(' ').append(col);
+		}
+		out.println(line);
+	}
+
+	/**
+	 * Writes a score from the point of view of the player to move
+	 * @param board the gameboard at the root of the search
+	 * @param score the score, positive for player 1
+	 * @return cp and the heuristic score, or mate and the number of moves to a win by the player
+	 * to move, negative for a loss
+	 */
+	private static String score(Gameboard board, int score) {
+		if (board.getTurn() == 2) {
+			score = -score;
+		}
+		if (Math.abs(score) < AIPlayer.SOLVED_WIN) {
+			return "cp " + score;
+		}
+		//a win scores SOLVED_WIN plus (spaces + 1 - pieces before the winning move) / 2
+		int spare = Math.abs(score) - AIPlayer.SOLVED_WIN;
+		int winner = (score > 0) == (board.getTurn() == 1) ? 1 : 2;
+		int before = board.rows * board.cols + 1 - 2 * spare;
+		if (before % 2 != winner - 1) {
+			before--;	//player 1 moves when the piece count is even
+		}
+		int moves = (before - board.getTotalMoves()) / 2 + 1;
+		return "mate " + (score > 0 ? moves : -moves);
+	}
+
+	/**
+	 * Waits for the running search to finish
+	 */
+	private void waitForSearch() {
+		if (search == null) {
+			return;
+		}
+		try {
+			search.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			out.println("info string error: " + e.getCause());
+		}
+		search = null;
+	}
+
+	/**
+	 * Stops the running search, which still answers with bestmove, and waits for it
+	 */
+	private void stopSearch() {
+		if (search != null && ai != null) {
+			ai.stop();
+		}
+		waitForSearch();
+	}
+
+	/**
+	 * Gets the value after a keyword of a command line
+	 * @param words the words of the command line
+	 * @param i the index of the keyword
+	 * @return the word after the keyword
+	 * @throws IllegalArgumentException if the keyword is the last word
+	 */
+	private static String valueOf(String[] words, int i) {
+		if (i + 1 >= words.length) {
+			throw new IllegalArgumentException("no value after " + words[i]);
+		}
+		return words[i + 1];
+	}
+
+	/**
+	 * Finds a word in a command line
+	 * @param words the words of the command line
+	 * @param word the word to find
+	 * @return the index of the word, -1 if it isn't there
+	 */
+	private static int indexOf(String[] words, String word) {
+		for (int i = 0; i < words.length; i++) {
+			if (words[i].equals(word)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
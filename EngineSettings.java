@@ -0,0 +1,107 @@
+package main;
+
+/**
+ * Settings for one AIPlayer, parsed from a short text spec so engines can be configured from the
+ * command line. A spec is a comma separated list of key=value pairs, any of which can be left out:
+ * <pre>
+ * depth=8      deepest iteration of the search
+ * time=0       milliseconds per move, 0 for no time limit
+ * nodes=0      nodes per move, 0 for no node limit
+ * solver=20    empty spaces at or below which the position is solved exactly, 0 for never
+ * threads=1    search threads per move
+ * tactics=true look for immediate wins and forced blocks and score threats, see AIPlayer.setTactics
+ * ordering=ckh move ordering heuristics: c center-first, k killers, h history, - for none
+ * </pre>
+ */
+public class EngineSettings {
+	/** Deepest iteration of the search */
+	private int depth = 8;
+
+	/** Milliseconds per move, 0 for no time limit */
+	private long timeMillis;
+
+	/** Nodes per move, 0 for no node limit */
+	private long nodes;
+
+	/** Empty spaces at or below which the position is solved exactly, 0 for never */
+	private int solverThreshold = AIPlayer.DEFAULT_SOLVER_THRESHOLD;
+
+	/** Search threads per move */
+	private int threads = 1;
+
+	/** True to use the tactical checks */
+	private boolean tactics = true;
+
+	/** Move ordering heuristics, some of c, k and h */
+	private String ordering = "ckh";
+
+	/**
+	 * Parses a settings spec
+	 * @param spec comma separated key=value pairs, empty for the defaults
+	 * @return the settings
+	 * @throws IllegalArgumentException if the spec has an unknown key or a bad value
+	 */
+	public static EngineSettings parse(String spec) {
+		EngineSettings settings = new EngineSettings();
+		for (String pair : spec.split(",")) {
+			if (pair.isBlank()) {
+				continue;
+			}
+			String[] keyValue = pair.split("=", 2);
+			if (keyValue.length != 2) {
+				throw new IllegalArgumentException("expected key=value: " + pair);
+			}
+			String value = keyValue[1].trim();
+			switch (keyValue[0].trim()) {
+				case "depth": settings.depth = Integer.parseInt(value); break;
+				case "time": settings.timeMillis = Long.parseLong(value); break;
+				case "nodes": settings.nodes = Long.parseLong(value); break;
+				case "solver": settings.solverThreshold = Integer.parseInt(value); break;
+				case "threads": settings.threads = Integer.parseInt(value); break;
+				case "tactics": settings.tactics = parseBoolean(value); break;
+				case "ordering": settings.ordering = value; break;
+				default: throw new IllegalArgumentException("unknown engine setting: " + keyValue[0]);
+			}
+		}
+		return settings;
+	}
+
+	/**
+	 * Reads a true or false setting
+	 * @param value the value, true or false
+	 * @return the setting
+	 * @throws IllegalArgumentException if the value is neither
+	 */
+	private static boolean parseBoolean(String value) {
+		if (!value.equals("true") && !value.equals("false")) {
+			throw new IllegalArgumentException("expected true or false: " + value);
+		}
+		return value.equals("true");
+	}
+
+	/**
+	 * Gets the search limits for each move
+	 * @return the depth, time and node limits
+	 */
+	public SearchLimits getLimits() {
+		return new SearchLimits(depth, timeMillis, nodes);
+	}
+
+	/**
+	 * Configures an AIPlayer with these settings
+	 * @param ai the AIPlayer to configure
+	 */
+	public void apply(AIPlayer ai) {
+		ai.setSearchLimits(getLimits());
+		ai.setSolverThreshold(solverThreshold);
+		ai.setMoveOrdering(new MoveOrdering(ordering.contains("c"), ordering.contains("k"), ordering.contains("h"), 0));
+		ai.setThreads(threads);
+		ai.setTactics(tactics);
+	}
+
+	@Override
+	public String toString() {
+		return "depth=" + depth + ",time=" + timeMillis + ",nodes=" + nodes + ",solver=" + solverThreshold
+				+ ",threads=" + threads + ",tactics=" + tactics + ",ordering=" + ordering;
+	}
+}
@@ -0,0 +1,389 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Search results kept on disk from one run of the game to the next, so a position the AI has
+ * searched before costs a lookup instead of a search. The file has a fixed size and is
+ * memory-mapped, so only the pages that are looked up are ever read and opening it takes no
+ * time however big it is.
+ * <pre>
+ * header: magic (int) | version (int) | rows (byte) | columns (byte) | length (byte) | unused (byte)
+ *         | bucket count (int) | clock (long) | unused up to 64 bytes
+ * bucket: four entries of position key xor data (long) | data (long)
+ * data:   score (24 bits) | depth (8) | move + 1 (8) | clock when last used (24), from the low bits
+ * </pre>
+ * Keys come from Gameboard.getCanonicalKey(), so a position and its mirror image share an entry,
+ * and moves are for the position with the key the way OpeningBook stores them. A position can
+ * only be stored in the bucket its key picks. When the bucket is full the entry that was used
+ * longest ago is replaced, the shallowest of those used equally long ago.
+ * <p>
+ * Lookups read the mapping directly. Results and lookups that hit are handed to a background
+ * thread, which writes the results, marks the entries used and forces the changes to disk. Each
+ * entry stores its key xor'd with its data, the way TranspositionTable does, so an entry half
+ * written when the program or the machine went down reads back as a miss instead of a wrong
+ * result. A new file is written under a temporary name and renamed once complete.
+ */
+public class EvaluationCache implements AutoCloseable {
+	/** First four bytes of a cache file, "C4EC" */
+	static final int MAGIC = 0x43344543;
+
+	/** Version of the file layout */
+	static final int VERSION = 1;
+
+	/** Size of the header in bytes */
+	static final int HEADER_BYTES = 64;
+
+	/** Number of entries in a bucket */
+	private static final int BUCKET_ENTRIES = 4;
+
+	/** Size of a bucket in bytes, one cache line */
+	private static final int BUCKET_BYTES = BUCKET_ENTRIES * 2 * Long.BYTES;
+
+	/** Most buckets a cache can have, so the file can be mapped in one piece */
+	private static final int MAX_BUCKETS = 1 << 24;
+
+	/** Bits of the clock kept in an entry */
+	private static final long CLOCK_MASK = 0xFFFFFF;
+
+	/** Number of updates that can wait for the writer thread, more are dropped */
+	private static final int MAX_PENDING = 1024;
+
+	/** Default size of a cache file, 64 MB or about four million positions */
+	public static final long DEFAULT_BYTES = 64L << 20;
+
+	/** The cache file */
+	private final Path file;
+
+	/** The open cache file */
+	private final FileChannel channel;
+
+	/** The mapped cache file */
+	private final MappedByteBuffer buffer;
+
+	/** Mask applied to a key to find its bucket, the bucket count is a power of two */
+	private final long bucketMask;
+
+	/** Number of rows of the gameboard the cache is for */
+	private final int rows;
+
+	/** Number of columns of the gameboard the cache is for */
+	private final int cols;
+
+	/** Number of pieces in a row needed to win on the gameboard the cache is for */
+	private final int length;
+
+	/** Updates waiting for the writer thread, each a key followed by its data */
+	private final ArrayBlockingQueue<long[]> pending = new ArrayBlockingQueue<>(MAX_PENDING);
+
+	/** Thread writing the queued updates */
+	private final Thread writer;
+
+	/** Ticks once per update written, stored in each entry when it's used */
+	private long clock;
+
+	/** Number of updates queued and not written yet */
+	private long unwritten;
+
+	/** Set once close has been called */
+	private volatile boolean closed;
+
+	/** First write error of the writer thread, null while writes succeed */
+	private volatile IOException failure;
+
+	/**
+	 * Opens a cache file, creating it if it doesn't exist
+	 * @param file the cache file
+	 * @param rows number of rows of the gameboard
+	 * @param cols number of columns of the gameboard
+	 * @param length number of pieces in a row needed to win
+	 * @param maxBytes most bytes a new file may take, rounded down to a power of two buckets. An
+	 * existing file keeps the size it was created with.
+	 * @throws IOException if the file can't be opened or created, isn't a cache file or is for
+	 * another gameboard size
+	 * @throws IllegalArgumentException if the gameboard is too big for position keys
+	 */
+	public EvaluationCache(Path file, int rows, int cols, int length, long maxBytes) throws IOException {
+		if ((rows + 1) * cols > 64) {
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " gameboard has no position keys");
+		}
+		this.file = file;
+		this.rows = rows;
+		this.cols = cols;
+		this.length = length;
+		if (!Files.exists(file)) {
+			create(maxBytes);
+		}
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+				//read the whole header
+			}
+			if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException(file + " is not an evaluation cache");
+			}
+			if (header.get(8) != rows || header.get(9) != cols || header.get(10) != length) {
+				throw new IOException(file + " is for a " + header.get(8) + "x" + header.get(9) + "x" + header.get(10)
+						+ " gameboard");
+			}
+			int buckets = header.getInt(12);
+			if (buckets <= 0 || buckets > MAX_BUCKETS || Integer.bitCount(buckets) != 1
+					|| channel.size() != HEADER_BYTES + (long) buckets * BUCKET_BYTES) {
+				throw new IOException(file + " is truncated");
+			}
+			bucketMask = buckets - 1;
+			clock = header.getLong(16);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		writer = new Thread(this::write, "evaluation cache");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Writes an empty cache file under a temporary name and renames it to the cache file, so the
+	 * cache file is never seen half written
+	 * @param maxBytes most bytes the file may take
+	 * @throws IOException if the file can't be written
+	 */
+	private void create(long maxBytes) throws IOException {
+		long buckets = Long.highestOneBit(Math.max(1, (maxBytes - HEADER_BYTES) / BUCKET_BYTES));
+		buckets = Math.min(buckets, MAX_BUCKETS);
+		Path temporary = Paths.get(file + ".tmp");
+		try (FileChannel created = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).put((byte) rows).put((byte) cols).put((byte) length).put((byte) 0)
+					.putInt((int) buckets).rewind();
+			created.write(header, 0);
+			created.write(ByteBuffer.allocate(1), HEADER_BYTES + buckets * BUCKET_BYTES - 1);	//empty entries are all zero
+			created.force(true);
+		}
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Checks whether the cache is for a gameboard's size
+	 * @param board the gameboard
+	 * @return true if the cache's positions can be looked up for the gameboard
+	 */
+	public boolean fits(Gameboard board) {
+		return board.rows == rows && board.cols == cols && board.length == length;
+	}
+
+	/**
+	 * Gets the number of positions the cache can hold
+	 * @return the entry capacity
+	 */
+	public long capacity() {
+		return (bucketMask + 1) * BUCKET_ENTRIES;
+	}
+
+	/**
+	 * Looks up a position. A hit is marked used in the background, so it's replaced last.
+	 * @param key the canonical key from Gameboard.getCanonicalKey()
+	 * @return the packed entry data, or 0 if the position isn't in the cache
+	 */
+	public long probe(long key) {
+		if (closed) {
+			return 0;
+		}
+		int offset = bucketOffset(key);
+		for (int i = 0; i < BUCKET_ENTRIES; i++, offset += 2 * Long.BYTES) {
+			long data = buffer.getLong(offset + Long.BYTES);
+			if (data != 0 && (buffer.getLong(offset) ^ data) == key) {
+				queue(key, data & ~(CLOCK_MASK << 40));
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Queues a search result to be stored. Returns right away, and drops the result if the
+	 * writer thread is too far behind or the cache is closed, like probe misses once it's closed.
+	 * A result never replaces a deeper one for the same position.
+	 * @param key the canonical key from Gameboard.getCanonicalKey()
+	 * @param score the score of the position, positive scores favor player 1
+	 * @param depth how many moves deep the position was searched, from 1 to 255
+	 * @param move the best column for the position with that key
+	 */
+	public void store(long key, int score, int depth, int move) {
+		if (closed) {
+			return;	//a search that was still running when the cache closed
+		}
+		if (depth < 1 || depth > 255) {
+			throw new IllegalArgumentException("depth " + depth + " is out of range");
+		}
+		score = Math.max(-(1 << 23), Math.min((1 << 23) - 1, score));
+		queue(key, (score & 0xFFFFFFL) | (long) depth << 24 | (long) ((move + 1) & 0xFF) << 32);
+	}
+
+	/**
+	 * Hands an update to the writer thread unless too many are waiting
+	 * @param key the canonical key
+	 * @param data the entry data without the clock
+	 */
+	private void queue(long key, long data) {
+		synchronized (this) {
+			unwritten++;
+		}
+		if (!pending.offer(new long[] {key, data})) {
+			written(1);
+		}
+	}
+
+	/**
+	 * Gets the score from packed entry data
+	 * @param data entry data returned by probe
+	 * @return the stored score
+	 */
+	public static int score(long data) {
+		return (int) (data << 8) >> 8;
+	}
+
+	/**
+	 * Gets the search depth from packed entry data
+	 * @param data entry data returned by probe
+	 * @return how many moves deep the position was searched
+	 */
+	public static int depth(long data) {
+		return (int) (data >>> 24) & 0xFF;
+	}
+
+	/**
+	 * Gets the best move from packed entry data
+	 * @param data entry data returned by probe
+	 * @return the column of the best move for the position with the entry's key
+	 */
+	public static int move(long data) {
+		return ((int) (data >>> 32) & 0xFF) - 1;
+	}
+
+	/**
+	 * Waits until every update queued so far is written and forced to disk
+	 * @throws IOException if the writer thread failed
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public synchronized void flush() throws IOException, InterruptedException {
+		while (unwritten > 0 && failure == null) {
+			wait();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Writes the queued updates and stops the writer thread
+	 * @throws IOException if an update couldn't be written or the file can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			writer.interrupt();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Runs on the writer thread. Writes every update waiting in the queue, then forces the changed
+	 * pages to disk, so updates that arrive together share a sync.
+	 */
+	private void write() {
+		List<long[]> batch = new ArrayList<>();
+		try {
+			while (true) {
+				batch.add(pending.take());
+				pending.drainTo(batch);
+				for (long[] update : batch) {
+					put(update[0], update[1]);
+				}
+				buffer.putLong(16, clock);
+				try {
+					buffer.force();
+				} catch (UncheckedIOException e) {
+					failure = e.getCause();
+				}
+				written(batch.size());
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			//closed
+		}
+	}
+
+	/**
+	 * Counts updates as written and wakes up flush
+	 * @param count number of updates
+	 */
+	private synchronized void written(int count) {
+		unwritten -= count;
+		notifyAll();
+	}
+
+	/**
+	 * Runs on the writer thread. Writes an entry into its bucket, over the position's own entry,
+	 * an empty one or the one used longest ago, in that order. A shallower result for a position
+	 * only marks the deeper entry used.
+	 * @param key the canonical key
+	 * @param data the entry data without the clock
+	 */
+	private void put(long key, long data) {
+		long now = ++clock & CLOCK_MASK;
+		int base = bucketOffset(key);
+		int target = -1;
+		long stalest = -1;
+		int shallowest = Integer.MAX_VALUE;
+		for (int i = 0, offset = base; i < BUCKET_ENTRIES; i++, offset += 2 * Long.BYTES) {
+			long old = buffer.getLong(offset + Long.BYTES);
+			if (old != 0 && (buffer.getLong(offset) ^ old) == key) {
+				if (depth(old) > depth(data)) {
+					data = old & ~(CLOCK_MASK << 40);
+				}
+				target = offset;
+				break;
+			}
+			long age = old == 0 ? Long.MAX_VALUE : (now - (old >>> 40)) & CLOCK_MASK;
+			if (age > stalest || (age == stalest && depth(old) < shallowest)) {
+				target = offset;
+				stalest = age;
+				shallowest = depth(old);
+			}
+		}
+		data |= now << 40;
+		buffer.putLong(target + Long.BYTES, data);
+		buffer.putLong(target, key ^ data);
+	}
+
+	/**
+	 * Finds the bucket a key belongs to
+	 * @param key the canonical key
+	 * @return byte offset of the bucket in the file
+	 */
+	private int bucketOffset(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;	//position keys have most of their bits in common
+		return HEADER_BYTES + (int) ((mixed >>> 40) & bucketMask) * BUCKET_BYTES;
+	}
+}
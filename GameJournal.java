@@ -0,0 +1,522 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of played games. Each game is stored as its move sequence, one column per
+ * nibble, so a full 6x7 game takes 28 bytes. A separate index file holds the offset of every
+ * game for random access.
+ * <pre>
+ * journal: magic (int) | version (int) | rows (byte) | columns (byte) | length (byte) | unused (5 bytes)
+ *          then per game: move count (short) | result (byte) | moves, two per byte, first in the
+ *          high nibble | CRC32 of the game's bytes so far (int)
+ * index:   journal offset of each game (long)
+ * </pre>
+ * Games are handed to append, which only copies the moves and queues them. A background thread
+ * writes the queued games, forces the journal to disk and only then adds them to the index, so
+ * the index never points at a game that isn't on disk. Opening a journal after a crash cuts off
+ * a half-written game at the end and indexes any whole games the index is missing.
+ */
+public class GameJournal implements AutoCloseable {
+	/** First four bytes of a journal file, "C4GJ" */
+	static final int MAGIC = 0x4334474A;
+
+	/** Version of the file layout */
+	static final int VERSION = 1;
+
+	/** Size of the journal header in bytes */
+	static final int HEADER_BYTES = 16;
+
+	/** Result of a game that was abandoned before it ended */
+	public static final int UNFINISHED = 0;
+
+	/** Result of a game that filled the gameboard without a winner, player wins are 1 and 2 */
+	public static final int TIE = 3;
+
+	/** Bytes in a game record besides its moves: count, result and CRC */
+	private static final int RECORD_OVERHEAD = 7;
+
+	/** Number of rows of the gameboard the games were played on */
+	private final int rows;
+
+	/** Number of columns of the gameboard the games were played on */
+	private final int cols;
+
+	/** Number of pieces in a row needed to win */
+	private final int length;
+
+	/** The journal file */
+	private final Path file;
+
+	/** The journal, games are written at its end */
+	private final FileChannel journal;
+
+	/** The index, one offset per game */
+	private final FileChannel index;
+
+	/** Games waiting for the writer thread */
+	private final LinkedBlockingQueue<Game> pending = new LinkedBlockingQueue<>();
+
+	/** Thread writing the queued games, null if the journal was opened for reading */
+	private final Thread writer;
+
+	/** Offset the next game will be written at, only used by the writer thread after opening */
+	private long end;
+
+	/** Number of games in the index, the games that can be read */
+	private volatile long games;
+
+	/** Number of games handed to append and not written yet */
+	private long unwritten;
+
+	/** Set once close has been called */
+	private volatile boolean closed;
+
+	/** First write error of the writer thread, null while writes succeed */
+	private volatile IOException failure;
+
+	/**
+	 * A game from the journal
+	 */
+	public static class Game {
+		/** Column of every move in order */
+		private final byte[] moves;
+
+		/** How the game ended, UNFINISHED, 1 or 2 for the winning player, or TIE */
+		private final int result;
+
+		Game(byte[] moves, int result) {
+			this.moves = moves;
+			this.result = result;
+		}
+
+		/**
+		 * Gets the columns of the moves in order
+		 * @return the columns, not a copy
+		 */
+		public byte[] getMoves() {
+			return moves;
+		}
+
+		/**
+		 * Gets how the game ended
+		 * @return UNFINISHED, 1 or 2 for the winning player, or TIE
+		 */
+		public int getResult() {
+			return result;
+		}
+
+		/**
+		 * Writes the moves as the digits Gameboard.playMoves reads, letters past column 9
+		 * @return the moves
+		 */
+		@Override
+		public String toString() {
+			StringBuilder digits = new StringBuilder(moves.length);
+			for (byte col : moves) {
+				digits.append(Character.forDigit(col, Character.MAX_RADIX));
+			}
+			return digits.toString();
+		}
+	}
+
+	/**
+	 * Opens a journal, creating it if it doesn't exist, and recovers from an earlier crash
+	 * @param file the journal file, the index is the same path with .idx appended
+	 * @param rows number of rows of the gameboard
+	 * @param cols number of columns of the gameboard, at most 16 so a column fits in a nibble
+	 * @param length number of pieces in a row needed to win
+	 * @throws IOException if the files can't be opened or the journal is for another gameboard size
+	 */
+	public GameJournal(Path file, int rows, int cols, int length) throws IOException {
+		if (cols > 16) {
+			throw new IllegalArgumentException("a journal can't store more than 16 columns");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.length = length;
+		this.file = file;
+		journal = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(Paths.get(file + ".idx"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			recover();
+		} catch (IOException e) {
+			journal.close();
+			index.close();
+			throw e;
+		}
+		writer = new Thread(this::write, "game journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Opens a journal for reading without changing it, so it can be read while another process
+	 * writes to it. The gameboard size comes from the journal, and only the games in the index
+	 * when it was opened can be read.
+	 * @param file the journal file
+	 * @throws IOException if the journal or its index can't be opened or it isn't a journal
+	 */
+	private GameJournal(Path file) throws IOException {
+		this.file = file;
+		journal = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			index = FileChannel.open(Paths.get(file + ".idx"), StandardOpenOption.READ);
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		try {
+			readFully(journal, header, 0);
+		} catch (EOFException e) {
+			header.putInt(0, 0);
+		}
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			journal.close();
+			index.close();
+			throw new IOException(file + " is not a game journal");
+		}
+		rows = header.get(8);
+		cols = header.get(9);
+		length = header.get(10);
+		games = index.size() / 8;	//the index only points at games already on disk
+		writer = null;
+		closed = true;
+	}
+
+	/**
+	 * Opens a journal for reading without changing it, so it can be read while another process
+	 * writes to it. Appending to it throws IllegalStateException.
+	 * @param file the journal file
+	 * @return the journal, with the games that were in its index when it was opened
+	 * @throws IOException if the journal or its index can't be opened or it isn't a journal
+	 */
+	public static GameJournal openForReading(Path file) throws IOException {
+		return new GameJournal(file);
+	}
+
+	/**
+	 * Gets the size of the gameboard the games were played on
+	 * @return the size as Gameboard.parse reads it, such as 6x7x4
+	 */
+	public String getBoardSize() {
+		return rows + "x" + cols + "x" + length;
+	}
+
+	/**
+	 * Queues a game to be written, the moves on the gameboard and how it ended. Returns right away.
+	 * @param board the gameboard, played from empty
+	 */
+	public void append(Gameboard board) {
+		int result = board.winnerFound() ? board.getTurn() : board.isFull() ? TIE : UNFINISHED;
+		append(board.getMoves(), result);
+	}
+
+	/**
+	 * Queues a game to be written. Returns right away.
+	 * @param moves the column of every move in order, not changed afterwards
+	 * @param result UNFINISHED, 1 or 2 for the winning player, or TIE
+	 */
+	public void append(byte[] moves, int result) {
+		if (closed) {
+			throw new IllegalStateException(writer == null ? "the journal is read-only" : "the journal is closed");
+		}
+		synchronized (this) {
+			unwritten++;
+		}
+		pending.add(new Game(moves, result));
+	}
+
+	/**
+	 * Waits until every game handed to append so far is written and indexed
+	 * @throws IOException if the writer thread failed
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public synchronized void flush() throws IOException, InterruptedException {
+		while (unwritten > 0 && failure == null) {
+			wait();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Gets the number of games that can be read
+	 * @return the game count
+	 */
+	public long size() {
+		return games;
+	}
+
+	/**
+	 * Reads one game
+	 * @param game the number of the game, from 0 to size() - 1
+	 * @return the game
+	 * @throws IOException if the journal can't be read
+	 * @throws IndexOutOfBoundsException if there is no such game
+	 */
+	public Game read(long game) throws IOException {
+		if (game < 0 || game >= games) {
+			throw new IndexOutOfBoundsException("game " + game + " of " + games);
+		}
+		ByteBuffer offset = ByteBuffer.allocate(8);
+		readFully(index, offset, game * 8);
+		Game read = readGame(offset.getLong(0));
+		if (read == null) {
+			throw new IOException("game " + game + " is corrupt");
+		}
+		return read;
+	}
+
+	/**
+	 * Rebuilds the position of a game after a number of moves
+	 * @param game the number of the game
+	 * @param ply the number of moves to play, at most the length of the game
+	 * @return a new gameboard with the position
+	 * @throws IOException if the journal can't be read
+	 */
+	public Gameboard replay(long game, int ply) throws IOException {
+		byte[] moves = read(game).getMoves();
+		Gameboard board = new Gameboard(rows, cols, length);
+		for (int i = 0; i < Math.min(ply, moves.length); i++) {
+			board.move(moves[i]);
+		}
+		return board;
+	}
+
+	/**
+	 * Reads every game in order with one sequential pass over the journal
+	 * @param visitor called with each game
+	 * @return the number of games read
+	 * @throws IOException if the journal can't be read
+	 */
+	public long scan(Consumer<Game> visitor) throws IOException {
+		long count = games;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+				DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 20))) {
+			input.skipNBytes(HEADER_BYTES);
+			byte[] record = new byte[RECORD_OVERHEAD + (rows * cols + 1) / 2];
+			CRC32 crc = new CRC32();
+			for (long i = 0; i < count; i++) {
+				Game game = readRecord(input, record, crc);
+				if (game == null) {
+					throw new IOException("game " + i + " is corrupt");
+				}
+				visitor.accept(game);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the queued games and stops the writer thread
+	 * @throws IOException if a game couldn't be written or the files can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (writer != null) {
+				writer.interrupt();
+			}
+			journal.close();
+			index.close();
+		}
+	}
+
+	/**
+	 * Checks the header, cuts off a half-written game and brings the index in line with the journal
+	 * @throws IOException if the files can't be read or written or the journal is for another size
+	 */
+	private void recover() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		if (journal.size() == 0) {
+			header.putInt(MAGIC).putInt(VERSION).put((byte) rows).put((byte) cols).put((byte) length).rewind();
+			journal.write(header, 0);
+			journal.force(true);
+			index.truncate(0);
+		} else {
+			readFully(journal, header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException(file + " is not a game journal");
+			}
+			if (header.get(8) != rows || header.get(9) != cols || header.get(10) != length) {
+				throw new IOException(file + " is for a " + header.get(8) + "x" + header.get(9) + "x" + header.get(10)
+						+ " gameboard");
+			}
+		}
+
+		//drop index entries that point past the end or at a game that didn't make it to disk
+		long indexed = index.size() / 8;
+		end = HEADER_BYTES;
+		ByteBuffer offset = ByteBuffer.allocate(8);
+		while (indexed > 0) {
+			offset.clear();
+			readFully(index, offset, (indexed - 1) * 8);
+			long last = offset.getLong(0);
+			Game game = last >= HEADER_BYTES && last < journal.size() ? readGame(last) : null;
+			if (game != null) {
+				end = last + RECORD_OVERHEAD + (game.getMoves().length + 1) / 2;
+				break;
+			}
+			indexed--;
+		}
+		index.truncate(indexed * 8);
+
+		//index whole games written after the last indexed one, then cut off anything half-written
+		List<Long> found = new ArrayList<>();
+		Game game;
+		while (end < journal.size() && (game = readGame(end)) != null) {
+			found.add(end);
+			end += RECORD_OVERHEAD + (game.getMoves().length + 1) / 2;
+		}
+		journal.truncate(end);
+		ByteBuffer offsets = ByteBuffer.allocate(found.size() * 8);
+		for (long position : found) {
+			offsets.putLong(position);
+		}
+		offsets.flip();
+		index.write(offsets, indexed * 8);
+		journal.force(true);
+		index.force(true);
+		games = indexed + found.size();
+	}
+
+	/**
+	 * Runs on the writer thread. Writes every game waiting in the queue in one go, forces the
+	 * journal to disk and then appends to the index, so many games finishing at once share a sync.
+	 */
+	private void write() {
+		List<Game> batch = new ArrayList<>();
+		CRC32 crc = new CRC32();
+		try {
+			while (true) {
+				batch.add(pending.take());
+				pending.drainTo(batch);
+				ByteBuffer records = ByteBuffer.allocate(batch.size() * (RECORD_OVERHEAD + (rows * cols + 1) / 2));
+				ByteBuffer offsets = ByteBuffer.allocate(batch.size() * 8);
+				long position = end;
+				for (Game game : batch) {
+					offsets.putLong(position);
+					int start = records.position();
+					byte[] moves = game.getMoves();
+					records.putShort((short) moves.length).put((byte) game.getResult());
+					for (int i = 0; i < moves.length; i += 2) {
+						int low = i + 1 < moves.length ? moves[i + 1] : 0;
+						records.put((byte) (moves[i] << 4 | low));
+					}
+					crc.reset();
+					crc.update(records.array(), start, records.position() - start);
+					records.putInt((int) crc.getValue());
+					position += records.position() - start;
+				}
+				records.flip();
+				offsets.flip();
+				try {
+					while (records.hasRemaining()) {
+						journal.write(records, end + records.position());
+					}
+					journal.force(false);
+					while (offsets.hasRemaining()) {
+						index.write(offsets, games * 8 + offsets.position());
+					}
+					index.force(false);
+					end = position;
+					games += batch.size();
+				} catch (IOException e) {
+					failure = e;	//the next batch overwrites what this one left behind
+				}
+				synchronized (this) {
+					unwritten -= batch.size();
+					notifyAll();
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			//closed
+		}
+	}
+
+	/**
+	 * Reads and checks the game at an offset of the journal
+	 * @param offset the offset of the game
+	 * @return the game, or null if it is cut off or its CRC doesn't match
+	 * @throws IOException if the journal can't be read
+	 */
+	private Game readGame(long offset) throws IOException {
+		int maxBytes = RECORD_OVERHEAD + (rows * cols + 1) / 2;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(maxBytes, Math.max(0, journal.size() - offset)));
+		readFully(journal, buffer, offset);
+		return readRecord(new DataInputStream(new ByteArrayInputStream(buffer.array())), new byte[maxBytes], new CRC32());
+	}
+
+	/**
+	 * Reads and checks the next game record of a stream
+	 * @param input the stream, positioned at a record
+	 * @param record buffer for the record's bytes, big enough for the longest game
+	 * @param crc CRC to check the record with
+	 * @return the game, or null if the record is cut off, too long or its CRC doesn't match
+	 * @throws IOException if the stream can't be read
+	 */
+	private Game readRecord(DataInputStream input, byte[] record, CRC32 crc) throws IOException {
+		try {
+			input.readFully(record, 0, 3);
+			int count = (record[0] & 0xFF) << 8 | (record[1] & 0xFF);
+			int packed = (count + 1) / 2;
+			if (count > rows * cols || record[2] < UNFINISHED || record[2] > TIE) {
+				return null;
+			}
+			input.readFully(record, 3, packed);
+			crc.reset();
+			crc.update(record, 0, 3 + packed);
+			if (input.readInt() != (int) crc.getValue()) {
+				return null;
+			}
+			byte[] moves = new byte[count];
+			for (int i = 0; i < count; i++) {
+				int b = record[3 + i / 2];
+				moves[i] = (byte) ((i % 2 == 0 ? b >> 4 : b) & 0xF);
+			}
+			return new Game(moves, record[2]);
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Fills a buffer from a channel at an offset
+	 * @param channel the channel
+	 * @param buffer the buffer to fill
+	 * @param offset where to start reading
+	 * @throws IOException if the channel can't be read or ends first
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+}
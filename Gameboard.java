@@ -1,6 +1,8 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 
 /**
@@ -10,14 +12,84 @@ import java.util.ArrayList;
  */
 public class Gameboard{
 
-	/** Internal array of the gameboard */
+	/** Internal array of the gameboard, kept in sync with the bitboards for the view */
 	private int[][] gb;
 
 	/** Number of rows in the gameboard */
-	final int rows = 6;
+	final int rows;
 
 	/** Number of columns in the gameboard */
-	final int cols = 7;
+	final int cols;
+
+	/** Number of pieces in a row needed to win */
+	final int length;
+
+	/**
+	 * Spaces used per column, one more than rows so shifts never wrap into the next column.
+	 * The space at (row, col) is numbered col * colHeight + row.
+	 */
+	private final int colHeight;
+
+	/**
+	 * True if every space fits in the bitboards, (rows + 1) * cols <= 64. Bigger gameboards leave
+	 * the bitboards empty and find wins from the line counts instead.
+	 */
+	private final boolean bitboards;
+
+	/**
+	 * Bitboards for each player's pieces, indexed by player number (index 0 is unused).
+	 * The space at (row, col) is bit col * colHeight + row.
+	 */
+	private long[] pieces;
+
+	/** Bitboard of every occupied space on the gameboard */
+	private long mask;
+
+	/** The first empty row of each column */
+	private int[] heights;
+
+	/** Column of every piece on the gameboard in the order they were placed */
+	private byte[] history;
+
+	/** Bitboard with the bottom space of every column set */
+	private long bottomMask;
+
+	/** Bitboard with every space of the gameboard set, without the spare space above each column */
+	private long boardMask;
+
+	/** Bitboard of the odd rows, counting the bottom row as row 1, see getThreatValue */
+	private long oddRows;
+
+	/** Value of one threat on the right rows for its player, see getThreatValue */
+	static final int THREAT_VALUE = 200;
+
+	/**
+	 * Random keys for Zobrist hashing, one per player per space, shared by every gameboard and
+	 * grown when a bigger gameboard is created. Seeded with a constant so hashes are the same from
+	 * run to run, and generated a space at a time so growing keeps the keys already handed out.
+	 */
+	private static long[][] zobristKeys = new long[3][0];
+
+	/** Zobrist keys of this gameboard's spaces */
+	private final long[][] zobrist;
+
+	/** Zobrist hash of the pieces on the gameboard, updated on every move and undo */
+	private long hash;
+
+	/** Zobrist hash of the pieces mirrored left to right, updated along with hash */
+	private long mirroredHash;
+
+	/** Every winning line on the gameboard, shared with every other gameboard of the same size */
+	private final WinningLines lines;
+
+	/** Packed piece count of each winning line, see WinningLines.countStep */
+	private int[] lineCounts;
+
+	/** Number of lines each player has filled, indexed by player number */
+	private int[] completedLines;
+
+	/** Heuristic value of the position, the sum of the values of every winning line */
+	private int heuristicValue;
 
 	/** Keeps track of the last Move object executed on the gameboard for easy undoing */
 	private Move lastMove;
@@ -31,17 +103,131 @@ public class Gameboard{
 	/** Integer that keeps track of total number of moves on gameboard to determine a tie */
 	private int totalMoves;
 
-	/** The AIPlayer instance for the gameboard */
-	private AIPlayer ai;
+	/** Columns of the moves taken back, the latest on top, for redoMove */
+	private byte[] undone;
+
+	/** Number of moves that can be redone */
+	private int undoneCount;
+
+	/**
+	 * Creates the standard gameboard, 6 rows and 7 columns with four in a row to win
+	 */
 	public Gameboard() {
+		this(6, 7, 4);
+	}
+
+	/**
+	 * Creates an empty gameboard of any size
+	 * @param rows number of rows
+	 * @param cols number of columns, at most 36 so every column can be written as one character
+	 * @param length number of pieces in a row needed to win
+	 * @throws IllegalArgumentException if a dimension is out of range
+	 */
+	public Gameboard(int rows, int cols, int length) {
+		if (rows < 1 || cols < 1 || cols > 36 || length < 2) {
+			throw new IllegalArgumentException("bad gameboard size " + rows + "x" + cols + "x" + length);
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.length = length;
+		colHeight = rows + 1;
+		bitboards = colHeight * cols <= 64;
+		zobrist = zobristKeys(colHeight * cols);
+		lines = WinningLines.of(rows, cols, length);
 		turn = 1;
 		winnerFound = false;
 		gb = new int[rows][cols];
+		pieces = new long[3];
+		mask = 0L;
+		heights = new int[cols];
+		history = new byte[rows * cols];
+		undone = new byte[rows * cols];
+		if (bitboards) {
+			for (int col = 0; col < cols; col++) {
+				bottomMask |= 1L << (col * colHeight);
+			}
+			boardMask = bottomMask * ((1L << rows) - 1);
+			oddRows = bottomMask * (0x5555555555555555L & ((1L << rows) - 1));
+		}
+		lineCounts = new int[lines.getLineCount()];
+		completedLines = new int[3];
 		totalMoves = 0;
-		ai = new AIPlayer(this);
 		lastMove = new Move(0,0);
 	}
 
+	/**
+	 * Creates a copy of another gameboard's size, position and turn
+	 * @param other the gameboard to copy
+	 */
+	public Gameboard(Gameboard other) {
+		this(other.rows, other.cols, other.length);
+		copyFrom(other);
+	}
+
+	/**
+	 * Creates an empty gameboard from a size written as rows x columns, optionally followed by
+	 * x length: "6x7" and "6x7x4" are the standard gameboard, "10x10x5" is Connect-5 on 10x10.
+	 * @param size the size
+	 * @return the gameboard
+	 * @throws IllegalArgumentException if the size can't be read or is out of range
+	 */
+	public static Gameboard parse(String size) {
+		String[] parts = size.trim().toLowerCase().split("x");
+		try {
+			if (parts.length == 2 || parts.length == 3) {
+				int length = parts.length == 3 ? Integer.parseInt(parts[2]) : 4;
+				return new Gameboard(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), length);
+			}
+		} catch (NumberFormatException e) {
+			//reported below
+		}
+		throw new IllegalArgumentException("expected rows x columns [x length]: " + size);
+	}
+
+	/**
+	 * Gets the Zobrist keys for gameboards with up to a number of spaces
+	 * @param spaces number of spaces, counting the spare space above each column
+	 * @return the keys, indexed by player number and space
+	 */
+	private static synchronized long[][] zobristKeys(int spaces) {
+		if (zobristKeys[1].length < spaces) {
+			long[][] keys = new long[3][spaces];
+			Random random = new Random(0x436F6E6E65637434L);
+			for (int i = 0; i < spaces; i++) {
+				keys[1][i] = random.nextLong();
+				keys[2][i] = random.nextLong();
+			}
+			zobristKeys = keys;
+		}
+		return zobristKeys;
+	}
+
+	/**
+	 * Copies the position, turn, move count and moves that can be redone of another gameboard of
+	 * the same size onto this one
+	 * @param other the gameboard to copy
+	 */
+	public void copyFrom(Gameboard other) {
+		for (int row = 0; row < rows; row++) {
+			System.arraycopy(other.gb[row], 0, gb[row], 0, cols);
+		}
+		System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+		System.arraycopy(other.heights, 0, heights, 0, cols);
+		System.arraycopy(other.history, 0, history, 0, other.totalMoves);
+		System.arraycopy(other.undone, 0, undone, 0, other.undoneCount);
+		undoneCount = other.undoneCount;
+		System.arraycopy(other.lineCounts, 0, lineCounts, 0, lineCounts.length);
+		System.arraycopy(other.completedLines, 0, completedLines, 0, completedLines.length);
+		heuristicValue = other.heuristicValue;
+		mask = other.mask;
+		hash = other.hash;
+		mirroredHash = other.mirroredHash;
+		turn = other.turn;
+		winnerFound = other.winnerFound;
+		totalMoves = other.totalMoves;
+		lastMove = other.lastMove;
+	}
+
 	/**
 	 * Returns whose turn it is, 1 for player one, 2 for player two, 3 for a tie
 	 * @return integer containing the turn number
@@ -72,6 +258,150 @@ public class Gameboard{
 	 */
 	public Move getLastMove(){ return this.lastMove;}
 
+	/**
+	 * Gets the heuristic value of the position, kept up to date on every move and undo.
+	 * Positive values favor player 1 and negative values favor player 2.
+	 * @return the sum of the values of every winning line
+	 */
+	public int getHeuristicValue(){
+		return this.heuristicValue;
+	}
+
+	/**
+	 * Gets the number of pieces on the gameboard
+	 * @return the total number of moves played
+	 */
+	public int getTotalMoves(){
+		return this.totalMoves;
+	}
+
+	/**
+	 * Gets the columns of the pieces on the gameboard in the order they were placed. After
+	 * setPosition the order is column by column rather than the order of a game.
+	 * @return a copy of the columns, one per piece
+	 */
+	public byte[] getMoves(){
+		return Arrays.copyOf(history, totalMoves);
+	}
+
+	/**
+	 * Gets the table of winning lines the heuristic value is kept with
+	 * @return the winning lines for this gameboard's size
+	 */
+	WinningLines getLines(){
+		return lines;
+	}
+
+	/**
+	 * Checks if the gameboard is small enough for bitboards, (rows + 1) * cols <= 64. Only
+	 * gameboards with bitboards have position keys and can be solved or looked up in a book.
+	 * @return true if the bitboards hold the position
+	 */
+	public boolean hasBitboards(){
+		return bitboards;
+	}
+
+	/**
+	 * Gets the bitboard of one player's pieces, the space at (row, col) is bit col * (rows + 1) + row
+	 * @param player the player number
+	 * @return the player's pieces, always 0 on a gameboard without bitboards
+	 */
+	public long getBitboard(int player){
+		return pieces[player];
+	}
+
+	/**
+	 * Gets the bitboard of every occupied space
+	 * @return the occupied spaces, always 0 on a gameboard without bitboards
+	 */
+	public long getMask(){
+		return mask;
+	}
+
+	/**
+	 * Gets a key that uniquely identifies the position, for storing positions outside the search.
+	 * Adding the bottom row to the mask leaves one bit just above the top piece of every column,
+	 * and player 1's pieces all sit below those bits, so no two positions share a key.
+	 * Only gameboards with bitboards have keys.
+	 * @return the key of the position
+	 */
+	public long getPositionKey(){
+		return (mask + bottomMask) | pieces[1];
+	}
+
+	/**
+	 * Mirrors a position key from getPositionKey left to right. Each column's bits are kept
+	 * together in the key, so mirroring only reverses the order of the columns.
+	 * @param key the position key
+	 * @return the key of the mirrored position
+	 */
+	public long mirrorKey(long key){
+		long columnBits = (1L << colHeight) - 1;
+		long mirrored = 0L;
+		for (int col = 0; col < cols; col++) {
+			mirrored |= ((key >>> (col * colHeight)) & columnBits) << ((cols - 1 - col) * colHeight);
+		}
+		return mirrored;
+	}
+
+	/**
+	 * Gets the key a position and its mirror image are both stored under: the smaller of the two
+	 * position keys. Moves stored with the key are for the position it belongs to, so a move found
+	 * for a position whose mirrored key is smaller has to be mirrored, see isKeyMirrored. Only
+	 * gameboards with bitboards have keys.
+	 * @return the canonical key of the position
+	 */
+	public long getCanonicalKey(){
+		long key = getPositionKey();
+		return Math.min(key, mirrorKey(key));
+	}
+
+	/**
+	 * Checks whether the canonical key is the mirrored position's key, in which case moves stored
+	 * with it are for column cols - 1 - col
+	 * @return true if the mirrored key is smaller than the position key
+	 */
+	public boolean isKeyMirrored(){
+		long key = getPositionKey();
+		return mirrorKey(key) < key;
+	}
+
+	/**
+	 * Gets the Zobrist hash of the pieces currently on the gameboard
+	 * @return the hash of the position
+	 */
+	public long getHash(){
+		return this.hash;
+	}
+
+	/**
+	 * Gets the Zobrist hash of the pieces mirrored left to right, the hash the mirrored position
+	 * would have
+	 * @return the hash of the mirrored position
+	 */
+	public long getMirroredHash(){
+		return this.mirroredHash;
+	}
+
+	/**
+	 * Checks if the position is its own mirror image, in which case a move and its mirrored move
+	 * are worth the same
+	 * @return true if every column holds the same pieces as its mirrored column
+	 */
+	public boolean isSymmetric(){
+		if (hash != mirroredHash) {
+			return false;
+		}
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols / 2; col++) {
+				if (gb[row][col] != gb[row][cols - 1 - col]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Checks if a winner has been found
 	 * @return true if a winner has been found, false otherwise
@@ -81,54 +411,227 @@ public class Gameboard{
 	}
 
 	/**
-	 * Helper function for win checking that returns the piece at the desired location
-	 * from the array. Returns -1 if the piece does not exist (invalid index)
-	 * @param col the column
-	 * @param row the row
-	 * @return the piece occupying a space or -1 if invalid index
+	 * Gets the bit for a space on the gameboard in the bitboard layout.
+	 * @param row the row of the space
+	 * @param col the column of the space
+	 * @return a bitboard with only that space set
+	 */
+	private long bit(int row, int col) {
+		return 1L << (col * colHeight + row);
+	}
+
+	/**
+	 * Places a piece for a player on the gameboard, updating the array, bitboards and column heights.
+	 * @param row the row of the space, must be the first empty row of the column
+	 * @param col the column of the space
+	 * @param player the player number the piece belongs to
 	 */
-	private int getPiece(int col, int row) {
-		if(col<0 || col>gb[0].length-1 || row<0 || row>gb.length-1) {
-			return -1;//return -1 for the invalid index, this will compare to be unequal always
+	private void place(int row, int col, int player) {
+		int index = col * colHeight + row;
+		gb[row][col] = player;
+		hash ^= zobrist[player][index];
+		mirroredHash ^= zobrist[player][(cols - 1 - col) * colHeight + row];
+		int step = lines.countStep(player);
+		int full = lines.fullCount(player);
+		for (int line : lines.getLines(index)) {
+			int count = lineCounts[line] + step;
+			heuristicValue += lines.value(count) - lines.value(count - step);
+			lineCounts[line] = count;
+			if (count == full) {
+				completedLines[player]++;
+			}
+		}
+		if (bitboards) {
+			long b = 1L << index;
+			pieces[player] |= b;
+			mask |= b;
 		}
+		heights[col] = row + 1;
+		history[totalMoves] = (byte) col;
+		totalMoves++;
+	}
+
+	/**
+	 * Removes the piece at a space, updating the array, bitboards and column heights.
+	 * @param row the row of the space, must be the top piece of the column
+	 * @param col the column of the space
+	 */
+	private void remove(int row, int col) {
+		int index = col * colHeight + row;
+		int player = gb[row][col];
+		if (player != 0) {
+			hash ^= zobrist[player][index];
+			mirroredHash ^= zobrist[player][(cols - 1 - col) * colHeight + row];
+			int step = lines.countStep(player);
+			int full = lines.fullCount(player);
+			for (int line : lines.getLines(index)) {
+				int count = lineCounts[line];
+				if (count == full) {
+					completedLines[player]--;
+				}
+				heuristicValue += lines.value(count - step) - lines.value(count);
+				lineCounts[line] = count - step;
+			}
+		}
+		gb[row][col] = 0;
+		if (bitboards) {
+			long b = ~(1L << index);
+			pieces[1] &= b;
+			pieces[2] &= b;
+			mask &= b;
+		}
+		heights[col] = row;
+		totalMoves--;
+	}
+
+	/**
+	 * Checks a bitboard for length pieces in a row vertically, horizontally or diagonally.
+	 * Each direction is a shift: 1 is vertical, colHeight is horizontal and colHeight - 1 and
+	 * colHeight + 1 are the two diagonals.
+	 * @param b the bitboard to check
+	 * @return true if the bitboard contains a winning line, false otherwise
+	 */
+	public boolean hasLine(long b) {
+		return hasRun(b, 1) || hasRun(b, colHeight) || hasRun(b, colHeight - 1) || hasRun(b, colHeight + 1);
+	}
 
-		return gb[row][col];//return what is occupying the valid space
+	/**
+	 * Checks a bitboard for length pieces in a row in one direction. Each step and's the bitboard
+	 * with itself shifted, doubling the run every bit of the result stands for until it is long enough.
+	 * @param b the bitboard to check
+	 * @param step the shift between neighboring spaces in the direction
+	 * @return true if the bitboard contains a run of length pieces
+	 */
+	private boolean hasRun(long b, int step) {
+		int run = 1;
+		while (run < length) {
+			int add = Math.min(run, length - run);
+			if (add * step >= 64) {
+				return false;	//the run would be longer than the gameboard
+			}
+			b &= b >>> (add * step);
+			run += add;
+		}
+		return b != 0;
 	}
 
 	/**
-	 * Moves a piece into the desired column
+	 * Moves a piece into the desired column. Moves that were taken back can no longer be redone,
+	 * unless the move is the next one redoMove would play.
 	 * @param col column number for move.
-	 * @return the row it was placed in
 	 */
 	public void move(int col){
 		Move m = prepMove(col);
 		if (m != null){
-			gb[m.getRow()][m.getCol()] = getTurn();
-			totalMoves++;
+			if (undoneCount > 0 && undone[undoneCount - 1] == col) {
+				undoneCount--;	//following the line that was taken back keeps the rest of it
+			} else {
+				undoneCount = 0;
+			}
+			place(m.getRow(), m.getCol(), getTurn());
 			lastMove = m;
 			winnerFound = checkWinner(m.getCol(), m.getRow());//checking if somebody won
-			if (!winnerFound) {
-				setTurn(turn == 2 ? 1 : 2);//switching the turn if nobody won
+			if (!winnerFound && turn != 3) {
+				setTurn(turn == 2 ? 1 : 2);//switching the turn if nobody won or tied
 			}
 		}
 	}
 
 	/**
-	 * Move method for the AI that calls the getBestMove() method with the AIPlayer instance 'ai'.
-	 * @param player the player number you want the move to be for. 1 for player 1, 2 for player 2.
+	 * Takes back the latest move, restoring the turn, the winner and the last move to what they
+	 * were before it. The move can be played again with redoMove. Unlike undoMove this is for
+	 * moves played with move, which keep the turn.
+	 * @return true if a move was taken back, false if the gameboard is empty
 	 */
-	public void moveAI(int player){
-		Move m = ai.getBestMove();
-		if (m != null){
-			gb[m.getRow()][m.getCol()] = player;
-			totalMoves++;
-			lastMove = m;
-			winnerFound = checkWinner(m.getCol(), m.getRow());
-			if (!winnerFound) {
-				setTurn(turn ==  2 ? 1 : 2);
+	public boolean takeBack(){
+		if (totalMoves == 0) {
+			return false;
+		}
+		int col = history[totalMoves - 1];
+		int row = heights[col] - 1;
+		turn = gb[row][col];	//the player who made the move is to move again
+		remove(row, col);
+		winnerFound = false;	//nothing is played after a win, so there was no winner before it
+		undone[undoneCount++] = (byte) col;
+		if (totalMoves == 0) {
+			lastMove = new Move(0,0);
+		} else {
+			int previous = history[totalMoves - 1];
+			lastMove = new Move(heights[previous] - 1, previous);
+		}
+		return true;
+	}
+
+	/**
+	 * Plays the latest move taken back by takeBack again
+	 * @return true if a move was played, false if there is none to redo
+	 */
+	public boolean redoMove(){
+		if (undoneCount == 0) {
+			return false;
+		}
+		move(undone[undoneCount - 1]);
+		return true;
+	}
+
+	/**
+	 * Gets the column redoMove would play
+	 * @return the column, or -1 if there is no move to redo
+	 */
+	public int getRedoColumn(){
+		return undoneCount == 0 ? -1 : undone[undoneCount - 1];
+	}
+
+	/**
+	 * Plays a sequence of moves from the current position, alternating turns as move does.
+	 * @param moves the columns of the moves as digits, "3342" plays columns 3, 3, 4 and 2, and
+	 *              letters past column 9 as Position writes them, up to z for column 35
+	 * @throws IllegalArgumentException if a column doesn't exist or is full, or the game is already over
+	 */
+	public void playMoves(String moves){
+		for (int i = 0; i < moves.length(); i++) {
+			int col = Character.digit(moves.charAt(i), Character.MAX_RADIX);	//columns past cols are rejected below
+			if (col < 0 || col >= cols || !canPlay(col) || winnerFound || isFull()) {
+				throw new IllegalArgumentException("illegal move " + moves.charAt(i) + " at " + i + " in " + moves);
+			}
+			move(col);
+		}
+	}
+
+	/**
+	 * Sets up the position of a key from getPositionKey, replacing the position on the gameboard.
+	 * The player to move follows from the piece count; if the position has a winner, the winner's
+	 * turn is kept the way move leaves it.
+	 * @param key the position key, only gameboards with bitboards have keys
+	 * @throws IllegalArgumentException if the key isn't a position that can come up in a game
+	 */
+	public void setPosition(long key){
+		if (!bitboards) {
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " gameboard has no position keys");
+		}
+		clear();
+		long columnBits = -1L >>> (64 - colHeight);
+		for (int col = 0; col < cols; col++) {
+			long column = (key >>> (col * colHeight)) & columnBits;
+			int height = 63 - Long.numberOfLeadingZeros(column);	//the bit above the top piece
+			if (height < 0) {
+				throw new IllegalArgumentException("bad position key " + Long.toHexString(key));
+			}
+			for (int row = 0; row < height; row++) {
+				place(row, col, (column >>> row & 1) == 1 ? 1 : 2);
 			}
 		}
-		//end method because a piece has been placed
+		int player1Pieces = Long.bitCount(pieces[1]);
+		boolean player1Won = hasLine(pieces[1]);
+		boolean player2Won = hasLine(pieces[2]);
+		boolean spareBits = cols * colHeight < 64 && key >>> (cols * colHeight) != 0;
+		if (spareBits || player1Pieces * 2 - totalMoves < 0 || player1Pieces * 2 - totalMoves > 1
+				|| (player1Won && player2Won)) {
+			clear();
+			throw new IllegalArgumentException("bad position key " + Long.toHexString(key));
+		}
+		winnerFound = player1Won || player2Won;
+		turn = player1Won ? 1 : player2Won ? 2 : isFull() ? 3 : totalMoves % 2 + 1;
 	}
 
 	/**
@@ -140,19 +643,224 @@ public class Gameboard{
 	 * @param player the player number you want the move to be for. 1 for player 1, 2 for player 2.
 	 */
 	public void testMove(Move m, int player){
-		gb[m.getRow()][m.getCol()] = player;
-		totalMoves++;
+		place(m.getRow(), m.getCol(), player);
+	}
+
+	/**
+	 * An overloaded testMove for the search that drops a piece into a column without
+	 * allocating a Move object.
+	 * @param col the column to play, must be a column where canPlay is true
+	 * @param player the player number you want the move to be for. 1 for player 1, 2 for player 2.
+	 */
+	public void testMove(int col, int player){
+		place(heights[col], col, player);
 	}
 
 	/**
 	 * Undoes a move on the gameboard using the Move object passed in. Will set the space back to 0
-	 * on the gameboard.
+	 * on the gameboard. The turn is left alone, as testMove leaves it; use takeBack for moves
+	 * played with move.
 	 * @param m the Move object with coordinates that you want to undo.
 	 */
 	public void undoMove(Move m){
-		this.gb[m.getRow()][m.getCol()] = 0;
+		remove(m.getRow(), m.getCol());
+		winnerFound = false;
+	}
+
+	/**
+	 * An overloaded undoMove for the search that takes the top piece off of a column.
+	 * @param col the column to undo, must be the column of the last testMove
+	 */
+	public void undoMove(int col){
+		remove(heights[col] - 1, col);
 		winnerFound = false;
-		totalMoves--;
+	}
+
+	/**
+	 * Checks if a column has room for another piece
+	 * @param col the column to check
+	 * @return true if the column is not full, false otherwise
+	 */
+	public boolean canPlay(int col){
+		return heights[col] < rows;
+	}
+
+	/**
+	 * Gets the first empty row of a column
+	 * @param col the column
+	 * @return the row the next piece in the column will land in, equal to rows if the column is full
+	 */
+	public int getHeight(int col){
+		return heights[col];
+	}
+
+	/**
+	 * Checks if the gameboard has no empty spaces left
+	 * @return true if every space is occupied, false otherwise
+	 */
+	public boolean isFull(){
+		return totalMoves >= rows * cols;
+	}
+
+	/**
+	 * Checks if dropping a piece into a column would complete a winning line for a player,
+	 * without changing the gameboard.
+	 * @param col the column to check, must be a column where canPlay is true
+	 * @param player the player number to check for
+	 * @return true if the move wins, false otherwise
+	 */
+	public boolean isWinningMove(int col, int player){
+		if (bitboards) {
+			return hasLine(pieces[player] | bit(heights[col], col));
+		}
+		int oneShort = lines.fullCount(player) - lines.countStep(player);
+		for (int line : lines.getLines(col * colHeight + heights[col])) {
+			if (lineCounts[line] == oneShort) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the spaces a piece can be dropped into right now
+	 * @return bitboard of the lowest empty space of every column that isn't full, always 0 on a
+	 * gameboard without bitboards
+	 */
+	public long getPlayableSpaces(){
+		return (mask + bottomMask) & boardMask;
+	}
+
+	/**
+	 * Gets the bitboard of a whole column
+	 * @param col the column
+	 * @return bitboard with every space of the column set, always 0 on a gameboard without bitboards
+	 */
+	public long getColumnMask(int col){
+		return boardMask & (((1L << rows) - 1) << (col * colHeight));
+	}
+
+	/**
+	 * Finds the empty spaces that would complete a line for a player, whether or not they can be
+	 * played yet
+	 * @param player the player number
+	 * @return bitboard of the winning spaces, always 0 on a gameboard without bitboards
+	 */
+	public long getWinningSpaces(int player){
+		return winningSpaces(pieces[player], mask, boardMask, colHeight, length);
+	}
+
+	/**
+	 * Gets the moves that don't let the opponent win with their next move. If the opponent has a
+	 * winning space that can be played right now it has to be blocked, and two of them can't be.
+	 * A move directly under an opponent's winning space is never safe. Doesn't look for wins of
+	 * the player's own, check those first.
+	 * @param player the player to move
+	 * @return bitboard of the safe moves, 0 if every move loses or on a gameboard without bitboards
+	 */
+	public long getNonLosingMoves(int player){
+		long playable = getPlayableSpaces();
+		long opponentWins = getWinningSpaces(player == 1 ? 2 : 1);
+		long forced = playable & opponentWins;
+		if (forced != 0) {
+			if ((forced & (forced - 1)) != 0) {
+				return 0;
+			}
+			playable = forced;
+		}
+		return playable & ~(opponentWins >>> 1);
+	}
+
+	/**
+	 * Scores the threats on the gameboard by the odd/even rule. When the gameboard fills up column
+	 * by column, player 1 gets the spaces on odd rows and player 2 the ones on even rows (counting
+	 * the bottom row as row 1), so a winning space that can't be played yet is only worth something
+	 * on its player's rows. A threat above an opponent's threat in the same column never
+	 * comes into play and isn't counted. Only holds when the number of rows is even.
+	 * @return THREAT_VALUE for each of player 1's threats on odd rows minus the same for each of
+	 * player 2's threats on even rows, always 0 on a gameboard without bitboards or with an odd
+	 * number of rows
+	 */
+	public int getThreatValue(){
+		if ((rows & 1) != 0) {
+			return 0;
+		}
+		long playable = getPlayableSpaces();
+		long threats1 = getWinningSpaces(1) & ~playable;
+		long threats2 = getWinningSpaces(2) & ~playable;
+		long good1 = threats1 & oddRows & ~spacesAbove(threats2);
+		long good2 = threats2 & ~oddRows & ~spacesAbove(threats1);
+		return THREAT_VALUE * (Long.bitCount(good1) - Long.bitCount(good2));
+	}
+
+	/**
+	 * Finds the spaces above the lowest of some spaces in every column. Each column is a field of
+	 * colHeight bits with the spare bit on top, so subtracting the bottom row or the spaces from
+	 * the spare bits never borrows from the next column.
+	 * @param spaces bitboard of spaces
+	 * @return bitboard of every space above the lowest of the spaces in its column
+	 */
+	private long spacesAbove(long spaces){
+		long top = bottomMask << rows;
+		long fields = spaces | top;
+		long lowest = fields & ~(fields - bottomMask);
+		return (top - lowest) & ~lowest & boardMask;
+	}
+
+	/**
+	 * Finds the empty spaces that would complete a line for a player's pieces. For every direction
+	 * and every place in the line the empty space could be, the other pieces of the line are
+	 * shifted onto the empty space and and'ed together.
+	 * @param position the player's pieces
+	 * @param occupied every occupied space
+	 * @param boardMask every space of the gameboard
+	 * @param colHeight bits per column, rows + 1
+	 * @param length number of pieces in a row needed to win
+	 * @return bitboard of the winning spaces
+	 */
+	static long winningSpaces(long position, long occupied, long boardMask, int colHeight, int length) {
+		if (length == 4 && colHeight < 21) {
+			return fourInARowSpaces(position, colHeight) & (boardMask ^ occupied);
+		}
+		long spaces = 0;
+		for (int d = 0; d < 4; d++) {
+			int step = d == 0 ? 1 : colHeight - 2 + d;
+			for (int k = d == 0 ? length - 1 : 0; k < length; k++) {	//vertically the empty space can only be on top
+				long line = -1L;
+				for (int j = 0; j < length; j++) {
+					if (j != k) {
+						int shift = (k - j) * step;
+						if (Math.abs(shift) >= 64) {
+							line = 0;	//longer than the gameboard
+						} else {
+							line &= shift > 0 ? position << shift : position >>> -shift;
+						}
+					}
+				}
+				spaces |= line;
+			}
+		}
+		return spaces & (boardMask ^ occupied);
+	}
+
+	/**
+	 * winningSpaces for four in a row, unrolled. In each direction the empty space is either at an
+	 * end of the line or next to the pair of pieces on one side of it.
+	 * @param position the player's pieces
+	 * @param colHeight bits per column, rows + 1, small enough that three columns are under 64 bits
+	 * @return bitboard of the winning spaces, including occupied and spare spaces
+	 */
+	private static long fourInARowSpaces(long position, int colHeight) {
+		long spaces = (position << 1) & (position << 2) & (position << 3);
+		for (int step = colHeight - 1; step <= colHeight + 1; step++) {
+			long pair = (position << step) & (position << 2 * step);
+			spaces |= pair & (position << 3 * step);
+			spaces |= pair & (position >>> step);
+			pair = (position >>> step) & (position >>> 2 * step);
+			spaces |= pair & (position << step);
+			spaces |= pair & (position >>> 3 * step);
+		}
+		return spaces;
 	}
 
 	/**
@@ -162,10 +870,8 @@ public class Gameboard{
 	 * valid row is found.
 	 */
 	public Move prepMove(int col){
-		for (int row = 0; row < gb.length; row++) {
-			if(this.gb[row][col] == 0 && row < this.gb.length){
-				return new Move(row, col);
-			}
+		if (canPlay(col)){
+			return new Move(heights[col], col);
 		}
 		return null;
 	}
@@ -178,7 +884,7 @@ public class Gameboard{
 	 */
 	public ArrayList<Move> makeTestMoves(){
 		ArrayList<Move> testMoves = new ArrayList<>();
-		for (int col = 0; col < gb[0].length; col++){
+		for (int col = 0; col < cols; col++){
 			Move m = prepMove(col);
 			if (m != null){
 				testMoves.add(m);
@@ -188,7 +894,8 @@ public class Gameboard{
 	}
 
 	/**
-	 * Sets all spaces back to zero on the gameboard, and sets the turn back to 1.
+	 * Sets all spaces back to zero on the gameboard, and sets the turn back to 1. No moves can be
+	 * redone afterwards.
 	 */
 	public void clear(){
 		for (int row = 0; row < gb.length; row++){
@@ -196,8 +903,24 @@ public class Gameboard{
 				gb[row][col] = 0;
 			}
 		}
+		pieces[1] = 0L;
+		pieces[2] = 0L;
+		mask = 0L;
+		hash = 0L;
+		mirroredHash = 0L;
+		for (int line = 0; line < lineCounts.length; line++){
+			lineCounts[line] = 0;
+		}
+		completedLines[1] = 0;
+		completedLines[2] = 0;
+		heuristicValue = 0;
+		for (int col = 0; col < cols; col++){
+			heights[col] = 0;
+		}
 		turn = 1;
+		winnerFound = false;
 		totalMoves = 0;
+		undoneCount = 0;
 	}
 	@Override
 	public String toString() {
@@ -205,17 +928,27 @@ public class Gameboard{
 		
 		for (int row = gb.length - 1; row >= 0; row--) {
 			returnString.append(row).append("  ");
-			for (int col = 0; col < gb.length; col++) {
+			for (int col = 0; col < cols; col++) {
 				returnString.append(gb[row][col]).append("   ");
 			}
 			returnString.append("\n");
 		}
-		for (int i = 0; i <= gb.length; i++) {
+		for (int i = 0; i < cols; i++) {
 			returnString.append("   ").append(i);
 		}
 
 		return returnString.toString();
 	}
+	/**
+	 * Checks if a player has length pieces in a row, whatever the turn is, so the search can check
+	 * its test moves
+	 * @param player the player number
+	 * @return true if the player has a winning line
+	 */
+	public boolean hasWon(int player) {
+		return bitboards ? hasLine(pieces[player]) : completedLines[player] > 0;
+	}
+
 	/**
 	 * Checks to see if a win has happened
 	 * @param column the column of the placed piece
@@ -223,83 +956,13 @@ public class Gameboard{
 	 * @return true if a win is found, false otherwise
 	 */
 	public boolean checkWinner(int column, int row) {
-		//progress variable tracking win progress for possible win branches
-		int progress = 0;
-
-		if (totalMoves >= 42){	//checks if gameboard is full and returns false right away if it is.
-			setTurn(3);
-			return false;
-		}
-		for(int i=1; i<4; i++) {	//check vertical
-			if(getPiece(column, row-i)==turn) {
-				progress++;
-			}else {
-				break;
-			}
-		}
-		if(progress > 2) {	//check for win
+		//only the player who just moved can have completed a line
+		if (hasWon(turn)) {
 			return true;
-		}else {	//reset tracker variable
-			progress = 0;
-		}
-		//diagonals
-		for(int i=3; i>0; i--) {	//check diagonal up-left
-			if(getPiece(column-i, row+i)==turn) {
-				progress++;
-			}else {
-				progress = 0;
-			}
-		}
-		for(int i=1; i<4; i++) {	//check diagonal down-right
-			if(getPiece(column+i, row-i)==turn) {
-				progress++;
-			}else {
-				break;
-			}
-		}
-		if(progress > 2) {	//check for win
-			return true;
-		}else {	//reset tracker variable
-			progress = 0;
-		}
-		for(int i=3; i>0; i--) {	//check diagonal up-right
-			if(getPiece(column+i, row+i)==turn) {
-				progress++;
-			}else {
-				progress=0;
-			}
-		}
-		for(int i=1; i<4; i++) {	//check diagonal down-left
-			if(getPiece(column-i, row-i)==turn) {
-				progress++;
-			}else {
-				break;
-			}
 		}
-		if(progress > 2) {//check for win
-			return true;
-		}else {//reset tracker variable
-			progress = 0;
-		}
-		//horizontals
-		for(int i=3; i>0; i--) {//check horizontal-left
-			if(getPiece(column+i, row)==turn) {//left
-				progress++;
-			}else {
-				progress = 0;
-			}
-		}
-		for(int i=1; i<4; i++) {//check horizontal-right
-			if(getPiece(column-i, row)==turn) {
-				progress++;
-			}else {
-				break;
-			}
-		}
-		if(progress > 2) {//check for win
-			return true;
+		if (totalMoves >= rows * cols){	//a full gameboard without a winner is a tie
+			setTurn(3);
 		}
-		//no win found
 		return false;
 	}
 }
@@ -320,4 +983,4 @@ class Move{
 	public int getCol(){
 		return col;
 	}
-}
\ No newline at end of file
+}
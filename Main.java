@@ -8,26 +8,45 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.effect.Effect;
 import javafx.scene.effect.Glow;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.*;
 import javafx.scene.media.Media;
+import javafx.scene.media.MediaException;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.ImagePattern;
+import javafx.scene.shape.ArcTo;
 import javafx.scene.shape.Circle;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.HLineTo;
+import javafx.scene.shape.MoveTo;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
+import javafx.scene.shape.VLineTo;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main class for executing UI of Connect4 (view-controller)
@@ -35,23 +54,49 @@ import java.util.List;
  *
  */
 public class Main extends Application{
-	/** image for player one's icon and pieces */
-    private final Image playerOneImage = new Image(this.getClass().getResource("/main/resources/weirdtechnocaco.png").toString());
-    /** image for player two's icon and pieces */
-    private final Image playerTwoImage = new Image(this.getClass().getResource("/main/resources/weirdtechnoimp.png").toString());
-    /** icon for the app window */
-    private final Image windowIcon = new Image(getClass().getResource("/main/resources/doomguyprofile.png").toString());
-    /** animated background video for game */
-    private final Media doomguyBackground = new Media(getClass().getResource("/main/resources/doombackground.mp4").toExternalForm());
-    /** the music to play in the background */
-    private final Media backgroundMusic = new Media(getClass().getResource("/main/resources/backgroundmusic.mp3").toString());
-    /** the object to play the background music */
+	/** image for player one's icon and pieces, decoded in the background */
+    private final Image playerOneImage = new Image(this.getClass().getResource("/main/resources/weirdtechnocaco.png").toString(), true);
+    /** image for player two's icon and pieces, decoded in the background */
+    private final Image playerTwoImage = new Image(this.getClass().getResource("/main/resources/weirdtechnoimp.png").toString(), true);
+    /** icon for the app window, decoded in the background */
+    private final Image windowIcon = new Image(getClass().getResource("/main/resources/doomguyprofile.png").toString(), true);
+    /** the object to play the background music, set once the music has loaded */
     private MediaView audio;
 
     /** the model of the gameboard */
     private Gameboard gameboard;
+    /** distance between the centers of neighboring holes, 85 on the standard gameboard and smaller on big ones so the window keeps its size */
+    private double cellSize;
+    /** radius of a hole and of a piece */
+    private double discRadius;
+    /** copy of the gameboard that the AI searches on, so the search never touches the model the view reads */
+    private Gameboard searchBoard;
+    /** the AI that searches on searchBoard, kept between moves so its transposition table stays warm */
+    private AIPlayer searchAI;
+    /** searches the AI's answers to the human's likely moves while the human thinks, null when pondering is turned off */
+    private Ponderer ponderer;
+    /** journal every game is recorded in, null until it's opened on the AI thread or if it couldn't be opened */
+    private volatile GameJournal journal;
+    /** search results kept from one run to the next, null unless the connect4.cache property names a file and it's been opened on the AI thread */
+    private volatile EvaluationCache evaluationCache;
+    /** single background thread that runs the AI's searches off the JavaFX Application Thread */
+    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AI search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** number of the latest AI search, results from older (cancelled) searches are ignored and queued ones never start */
+    private volatile int searchId;
     /** boolean indicating if the opponent is a human or ai (true for ai) */
     private boolean aifoe;
+    /** true in analysis mode, where either player can move, nobody plays for the AI and every position is evaluated */
+    private boolean analysis;
+    /** limits of the search that evaluates a position in analysis mode, a depth so positions seen before come from the warm transposition table */
+    private final SearchLimits analysisLimits = SearchLimits.depth(Integer.getInteger("connect4.analysisDepth", 12));
+    /** true while the piece of the latest move is falling */
+    private boolean dropping;
+    /** true once the searches are stopped and the journal and the evaluation cache are closed */
+    private boolean shutDown;
     /** the artificial intelligence player */
     
     /** root stackpane */
@@ -64,11 +109,17 @@ public class Main extends Application{
                 private ImageView playerImage;
                 /** label containing info on whose turn it is, who won, etc. */
                 private Label statusLabel;
+                /** spinner shown while the AI is thinking */
+                private ProgressIndicator thinkingIndicator;
+                /** label with the best move and score of the position in analysis mode */
+                private Label analysisLabel;
 
     /** gridpane for ? */
     private GridPane gridPane;
             /** pane that arranges all of the gamepiece images */
             private Pane discPane;
+            /** draws every piece on one canvas in discPane instead of a node per piece, null unless connect4.renderer is canvas */
+            private BoardCanvas boardCanvas;
             /** Hbox to contain relevant app buttons */
             private HBox buttons;
 
@@ -80,6 +131,15 @@ public class Main extends Application{
 
                 /** Toggle Button for the AI player selection */
                 private ToggleButton aiToggle;
+
+                /** Toggle Button for analysis mode */
+                private ToggleButton analysisToggle;
+
+                /** button for taking back the latest move */
+                private Button back;
+
+                /** button for playing the latest move taken back again */
+                private Button forward;
         /** pane for the back layer of the root pane that is solely containing the background video */
         private Pane backgroundPane;
         	/** the mediaview that will play the background video */
@@ -91,7 +151,20 @@ public class Main extends Application{
 
     @Override
     public void start(Stage stage) throws Exception {
-    	gameboard = new Gameboard();
+    	long startNanos = System.nanoTime();
+    	gameboard = Gameboard.parse(System.getProperty("connect4.board", "6x7x4"));
+    	searchBoard = new Gameboard(gameboard);
+    	cellSize = Math.min(85, Math.min(595.0 / gameboard.cols, 510.0 / gameboard.rows));
+    	discRadius = cellSize * 40 / 85;
+    	TranspositionTable table = new TranspositionTable(AIPlayer.DEFAULT_TABLE_BYTES, false);
+    	searchAI = new AIPlayer(searchBoard, table);
+    	if (!"false".equals(System.getProperty("connect4.ponder"))) {
+    	    ponderer = new Ponderer(gameboard, table);
+    	}
+    	loadOpeningBook();
+    	EngineMetrics metrics = EngineMetrics.register("ui");
+    	metrics.setLogMoves(Boolean.getBoolean("connect4.logMoves"));
+    	searchAI.setMetrics(metrics);
     	aifoe = true;
         Font doomFont = Font.loadFont(this.getClass().getResourceAsStream("/main/resources/AmazDooMRight.ttf"), 60);
         root = new StackPane();
@@ -110,13 +183,153 @@ public class Main extends Application{
         createBoard();
 
         Scene scene = new Scene(root);
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == KeyCode.LEFT) {
+                takeBack();
+                event.consume();
+            } else if (event.getCode() == KeyCode.RIGHT) {
+                redoMove();
+                event.consume();
+            }
+        });
         scene.getStylesheets().add(getClass().getResource("/main/resources/styles.css").toExternalForm());
 
         stage.setScene(scene);
         stage.getIcons().add(windowIcon);
         stage.setTitle("Connect Four");
         stage.setResizable(false);
+        if (Boolean.getBoolean("connect4.logStartup")) {
+            logFirstFrame(scene, startNanos);
+        }
         stage.show();
+        aiExecutor.submit(this::openJournal);	//recovery and syncs to disk, kept off the path to the first frame
+        aiExecutor.submit(this::openEvaluationCache);	//a new cache file is written out and synced
+        startPondering();
+        loadMedia();
+    }
+
+    /**
+     * Prints how long it took to get the first frame on screen, once the scene's first pulse has
+     * been laid out
+     * @param scene the scene of the window
+     * @param startNanos System.nanoTime() when start was called
+     */
+    private static void logFirstFrame(Scene scene, long startNanos) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                System.out.printf("first frame %d ms after launch, %.1f ms after start%n",
+                        ManagementFactory.getRuntimeMXBean().getUptime(), (System.nanoTime() - startNanos) / 1e6);
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+    }
+
+    /**
+     * Loads the background video and music on a background thread, so opening and parsing them
+     * doesn't hold up the window. Each starts playing as soon as it's ready, and one that is
+     * missing or can't be played is left out.
+     */
+    private void loadMedia() {
+        Thread loader = new Thread(() -> {
+            MediaPlayer audioPlayer = createPlayer("/main/resources/backgroundmusic.mp3");
+            if (audioPlayer != null) {
+                Platform.runLater(() -> audio = new MediaView(audioPlayer));
+            }
+            MediaPlayer videoPlayer = createPlayer("/main/resources/doombackground.mp4");
+            if (videoPlayer != null) {
+                videoPlayer.setMute(true);
+                Platform.runLater(() -> backgroundView.setMediaPlayer(videoPlayer));
+            }
+        }, "media loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Creates a player for a media resource that loops and starts on its own once it's ready
+     * @param resource the resource path of the media
+     * @return the player, or null if the resource is missing or can't be played
+     */
+    private MediaPlayer createPlayer(String resource) {
+        URL url = getClass().getResource(resource);
+        if (url == null) {
+            return null;
+        }
+        try {
+            MediaPlayer player = new MediaPlayer(new Media(url.toExternalForm()));
+            player.setAutoPlay(true);
+            player.setCycleCount(MediaPlayer.INDEFINITE);
+            return player;
+        } catch (MediaException e) {
+            System.err.println("Could not load " + resource + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Memory-maps the opening book for the AI if there is one. The file is the connect4.book
+     * system property, or openingbook.bin in the working directory.
+     */
+    private void loadOpeningBook() {
+        Path book = Paths.get(System.getProperty("connect4.book", "openingbook.bin"));
+        if (Files.isRegularFile(book)) {
+            try {
+                OpeningBook openingBook = OpeningBook.open(book);
+                searchAI.setOpeningBook(openingBook);
+                if (ponderer != null) {
+                    ponderer.getAI().setOpeningBook(openingBook);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not load opening book: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the journal the games are recorded in. The file is the connect4.journal system property,
+     * or games.c4j in the working directory. Runs on the AI thread once the window is shown, so
+     * shutDown waits for it before closing the journal.
+     */
+    private void openJournal() {
+        try {
+            journal = new GameJournal(Paths.get(System.getProperty("connect4.journal", "games.c4j")),
+                    gameboard.rows, gameboard.cols, gameboard.length);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not open game journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the evaluation cache for the AI if the connect4.cache system property names a file. A
+     * new file is connect4.cacheMB megabytes, 64 by default. Runs on the AI thread once the window
+     * is shown, ahead of the AI's first search.
+     */
+    private void openEvaluationCache() {
+        String file = System.getProperty("connect4.cache");
+        if (file == null) {
+            return;
+        }
+        try {
+            long bytes = Long.getLong("connect4.cacheMB", EvaluationCache.DEFAULT_BYTES >> 20) << 20;
+            evaluationCache = new EvaluationCache(Paths.get(file), gameboard.rows, gameboard.cols, gameboard.length, bytes);
+            searchAI.setEvaluationCache(evaluationCache);
+            if (ponderer != null) {
+                ponderer.getAI().setEvaluationCache(evaluationCache);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not open evaluation cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands the game on the gameboard to the journal, which writes it in the background
+     */
+    private void recordGame() {
+        if (journal != null && gameboard.getTotalMoves() > 0) {
+            journal.append(gameboard);
+        }
     }
 
     /**
@@ -133,25 +346,27 @@ public class Main extends Application{
     }
     
     /**
-     * Creates a rectangle with holes cut out for the pieces.
+     * Creates a rectangle with holes cut out for the pieces. The outline and every hole are traced
+     * into one path in a single pass, and the even-odd fill rule leaves the holes empty, which is
+     * much cheaper than subtracting the holes from the rectangle one at a time.
      * @return the generated shape representing the board
      */
     private Shape createBoardRectangle() {
-        Shape boardRectangle = new Rectangle(640, 560);
-        for(int row = 0; row < 6; row++){
-            for(int col = 0; col < 7; col++){
-                Circle piece = new Circle();
-                piece.setRadius(40);
-                piece.setCenterX(40);
-                piece.setCenterY(40);
-                piece.setSmooth(true);
-
-                piece.setTranslateX(col * 85 + 20);
-                piece.setTranslateY(row * 85 + 20);
-
-                boardRectangle = Shape.subtract(boardRectangle, piece);
+        double width = gameboard.cols * cellSize + 45;
+        double height = gameboard.rows * cellSize + 50;
+        javafx.scene.shape.Path boardRectangle = new javafx.scene.shape.Path(new MoveTo(0, 0), new HLineTo(width), new VLineTo(height), new HLineTo(0), new ClosePath());
+        for(int row = 0; row < gameboard.rows; row++){
+            for(int col = 0; col < gameboard.cols; col++){
+                double centerX = col * cellSize + 20 + discRadius;
+                double centerY = row * cellSize + 20 + discRadius;
+                boardRectangle.getElements().addAll(new MoveTo(centerX - discRadius, centerY),
+                        new ArcTo(discRadius, discRadius, 0, centerX + discRadius, centerY, false, true),
+                        new ArcTo(discRadius, discRadius, 0, centerX - discRadius, centerY, false, true),
+                        new ClosePath());
             }
         }
+        boardRectangle.setFillRule(FillRule.EVEN_ODD);
+        boardRectangle.setStroke(null);
         boardRectangle.setFill(Color.web("290202", 0.6));
 
         return boardRectangle;
@@ -165,16 +380,19 @@ public class Main extends Application{
     private List<Rectangle> createColumns(){
         List<Rectangle> rectangles = new ArrayList<>();
 
-        for (int col = 0; col < 7; col++){
-            Rectangle gameSlot = new Rectangle(80, 7*80);
+        for (int col = 0; col < gameboard.cols; col++){
+            Rectangle gameSlot = new Rectangle(2 * discRadius, gameboard.rows * cellSize + 50);
             gameSlot.setFill(Color.TRANSPARENT);
-            gameSlot.setTranslateX((col*85)+20);
+            gameSlot.setTranslateX((col*cellSize)+20);
 
             final int column = col;
             gameSlot.setOnMouseClicked(event -> {
-                if(!aifoe) {
+                if(!aifoe || analysis) {
                     insertPiece(column);
                 }else if(aifoe && gameboard.getTurn()==1) {
+                    if (ponderer != null && gameboard.canPlay(column)) {
+                        ponderer.played(column);	//search the answer while the piece drops
+                    }
                     insertPiece(column);
                 }
             });
@@ -191,57 +409,224 @@ public class Main extends Application{
      * @param col the column number of the move
      */
     private void insertPiece (int col){
-        int row = 0;
+        //the column comes from a click, or from the AI's background search when it's the AI's turn
+        int player = gameboard.getTurn();
+        gameboard.move(col);
+        showMove(player);
+    }
+
+    /**
+     * Drops the piece of the latest move on the gameboard into place on the visual gameboard
+     * @param player the player who made the move
+     */
+    private void showMove(int player) {
+        int col = gameboard.getLastMove().getCol();
+        int row = gameboard.getLastMove().getRow();
+        if (gameboard.winnerFound() || gameboard.isFull()) {
+            recordGame();
+        }
+        gridPane.setMouseTransparent(true);
+        dropping = true;
+        if (boardCanvas != null) {
+            boardCanvas.drop(col, row, player, this::pieceLanded);
+            return;
+        }
         Circle piece = new Circle();
-        if (gameboard.getTurn() == 1) {
-            //if the turn is 1, it will call the player move method using the column
-            //input parameter
+        if (player == 1) {
             piece.setFill(new ImagePattern(playerOneImage));
-            gameboard.move(col);
         } else {
-            //if the turn is two it will call the AI move method and set the column
-            //parameter to the lastMove column attribute.
-            if (aifoe){
-                piece.setFill(new ImagePattern(playerTwoImage));
-                gameboard.moveAI(2);
-                col = gameboard.getLastMove().getCol();
-            }else{
-                piece.setFill(new ImagePattern(playerTwoImage));
-                gameboard.move(col);
-            }
+            piece.setFill(new ImagePattern(playerTwoImage));
         }
-        row = gameboard.getLastMove().getRow();
-        piece.setRadius(40);
-        piece.setCenterX(40);
-        piece.setCenterY(40);
+        piece.setRadius(discRadius);
+        piece.setCenterX(discRadius);
+        piece.setCenterY(discRadius);
 
         discPane.getChildren().add(piece);
-        piece.setTranslateX(col*(85) + 20);
+        piece.setTranslateX(col*(cellSize) + 20);
 
         TranslateTransition translateTransition = new TranslateTransition(Duration.seconds(0.5), piece);
-        translateTransition.setToY((5 - row) * 85 + 20);
-        gridPane.setMouseTransparent(true);
-        translateTransition.setOnFinished(event -> {
-            if(gameboard.winnerFound()) {
-                gameOver();
-            }else{
-                gridPane.setMouseTransparent(false);
-                if(gameboard.getTurn() == 1){
-                    playerImage.setImage(playerOneImage);
-                    statusLabel.setText("Player 1's Turn");
-                }else{
-                    playerImage.setImage(playerTwoImage);
-                    statusLabel.setText("Player 2's Turn");
+        translateTransition.setToY((gameboard.rows - 1 - row) * cellSize + 20);
+        translateTransition.setOnFinished(event -> pieceLanded());
+        translateTransition.play();
+    }
+
+    /**
+     * Called once the piece of the latest move has landed, ends the game or hands the turn on
+     */
+    private void pieceLanded() {
+        dropping = false;
+        if(gameboard.winnerFound() || gameboard.isFull()) {
+            gameOver();
+        }else{
+            gridPane.setMouseTransparent(false);
+            showTurn();
+            if (analysis) {
+                startAnalysis();
+            } else if (gameboard.getTurn() == 2 && aifoe) {
+                startAIMove();
+            }
+        }
+    }
+
+    /**
+     * Shows whose turn it is
+     */
+    private void showTurn() {
+        if(gameboard.getTurn() == 1){
+            playerImage.setImage(playerOneImage);
+            statusLabel.setText("Player 1's Turn");
+        }else{
+            playerImage.setImage(playerTwoImage);
+            statusLabel.setText("Player 2's Turn");
+        }
+    }
+
+    /**
+     * Takes back the latest move. Against the AI outside analysis mode the human's move before the
+     * AI's answer is taken back too, so it's the human's turn again. Nothing happens while a piece
+     * is falling.
+     */
+    private void takeBack() {
+        if (dropping || gameboard.getTotalMoves() == 0) {
+            return;
+        }
+        cancelAIMove();
+        liftLatestPiece();
+        if (aifoe && !analysis && gameboard.getTurn() == 2) {
+            liftLatestPiece();
+        }
+        gridPane.setMouseTransparent(false);
+        newGame.setDefaultButton(false);
+        showTurn();
+        if (analysis) {
+            startAnalysis();
+        } else {
+            startPondering();
+        }
+    }
+
+    /**
+     * Takes the latest move back on the gameboard and removes its piece from the visual gameboard
+     */
+    private void liftLatestPiece() {
+        Move latest = gameboard.getLastMove();
+        gameboard.takeBack();
+        if (boardCanvas != null) {
+            boardCanvas.lift(latest.getCol(), latest.getRow());
+        } else {
+            discPane.getChildren().remove(discPane.getChildren().size() - 1);	//the pieces are added in move order
+        }
+    }
+
+    /**
+     * Plays the latest move taken back again, unless a piece is falling or the AI is to move
+     */
+    private void redoMove() {
+        if (dropping || gameboard.getRedoColumn() < 0 || (aifoe && !analysis && gameboard.getTurn() == 2)) {
+            return;
+        }
+        cancelAIMove();
+        int player = gameboard.getTurn();
+        gameboard.redoMove();
+        showMove(player);
+    }
+
+    /**
+     * Evaluates the position on the gameboard on the background thread and shows the best move
+     * and its score once they're found. The search is limited by depth and keeps its transposition
+     * table between positions, so stepping back and forth through a game finds most of the tree it
+     * needs already searched.
+     */
+    private void startAnalysis() {
+        if (gameboard.winnerFound() || gameboard.isFull()) {
+            analysisLabel.setText("");
+            return;
+        }
+        final Position position = Position.of(gameboard);
+        final int player = gameboard.getTurn();
+        final int search = ++searchId;
+        thinkingIndicator.setVisible(true);
+        aiExecutor.submit(() -> {
+            searchAI.resume();	//before the check, so a cancel after it stops the search
+            if (search != searchId) {
+                return;	//another position was shown before this search started
+            }
+            position.setUp(searchBoard);
+            Move m = searchAI.getBestMove(player, analysisLimits);
+            SearchStats stats = searchAI.getLastStats();
+            Platform.runLater(() -> {
+                if (search != searchId || m == null) {
+                    return;	//the search was cancelled while it ran
                 }
-                if (gameboard.getTurn() == 2 && aifoe) {
-                    //if turn 2 it doesn't matter what number gets passed in here because
-                    //the ai get move will just replace it with whatever column the
-                    //best move is in.
-                    insertPiece(0);
+                thinkingIndicator.setVisible(false);
+                int score = player == 1 ? stats.getScore() : -stats.getScore();
+                String value = Math.abs(score) >= AIPlayer.SOLVED_WIN ? (score > 0 ? "wins" : "loses") : String.format("%+d", score);
+                analysisLabel.setText(String.format("best %d, %s, depth %d %s, %.0f ms", m.getCol() + 1, value,
+                        stats.getDepth(), stats.getSource(), stats.getWallMillis()));
+            });
+        });
+    }
+
+    /**
+     * Starts the AI's search for its move on the background thread. If pondering already found the
+     * answer to the human's move it is played right away, otherwise the search runs on a copy of
+     * the gameboard and the chosen column is played on the JavaFX Application Thread once it's found.
+     */
+    private void startAIMove() {
+        final Position position = Position.of(gameboard);
+        final int search = ++searchId;
+        final int reply = gameboard.getLastMove().getCol();
+        thinkingIndicator.setVisible(true);
+        statusLabel.setText("Player 2 is thinking");
+        aiExecutor.submit(() -> {
+            position.setUp(searchBoard);	//here, as an earlier search may still be running on searchBoard until now
+            Move pondered = null;
+            if (ponderer != null) {
+                try {
+                    pondered = ponderer.take(reply);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            Move m = pondered;
+            if (m == null) {
+                searchAI.resume();	//before the check, so a cancel after it stops the search
+                if (search != searchId) {
+                    return;	//cancelled while waiting for the ponderer
                 }
+                m = searchAI.getBestMove(2);
             }
+            final Move move = m;
+            Platform.runLater(() -> {
+                if (search != searchId || move == null) {
+                    return;	//the search was cancelled while it ran
+                }
+                thinkingIndicator.setVisible(false);
+                insertPiece(move.getCol());
+                startPondering();
+            });
         });
-        translateTransition.play();
+    }
+
+    /**
+     * Starts pondering the human's move if the AI is playing and it's the human's turn
+     */
+    private void startPondering() {
+        if (ponderer != null && aifoe && !analysis && gameboard.getTurn() == 1 && !gameboard.winnerFound() && !gameboard.isFull()) {
+            ponderer.start(gameboard, 2);
+        }
+    }
+
+    /**
+     * Cancels the AI's search if one is running. Its result will be ignored when it comes back.
+     */
+    private void cancelAIMove() {
+        searchId++;
+        searchAI.stop();
+        if (ponderer != null) {
+            ponderer.stop();
+        }
+        thinkingIndicator.setVisible(false);
     }
 
     /**
@@ -263,40 +648,91 @@ public class Main extends Application{
      * Resets the view and signals the model to reset itself as well for a new game.
      */
     public void resetGame(){
+        cancelAIMove();
+        if (!gameboard.winnerFound() && !gameboard.isFull()) {
+            recordGame();	//abandoned, finished games were recorded when they ended
+        }
         playerImage.setImage(playerOneImage);
         gridPane.setMouseTransparent(false);
-        discPane.getChildren().clear();
+        if (boardCanvas != null) {
+            boardCanvas.clear();
+        } else {
+            discPane.getChildren().clear();
+        }
         gameboard.clear();
+        dropping = false;
         statusLabel.setText("Player 1's turn");
+        newGame.setDefaultButton(false);
+        if (analysis) {
+            startAnalysis();
+        } else {
+            startPondering();
+        }
     }
 
     /**
      * Method closing the app and shutting down the game
      */
     private void exitGame(){
+        shutDown();
         Platform.exit();
         System.exit(0);
     }
 
+    /**
+     * Called by JavaFX when the window is closed, shuts the game down like the exit button does
+     */
+    @Override
+    public void stop() {
+        shutDown();
+    }
+
+    /**
+     * Stops the AI's searches and waits for them to finish, then records an unfinished game and
+     * closes the journal and the evaluation cache, so no search writes to them once they're closed.
+     * Only the first call does anything.
+     */
+    private void shutDown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        cancelAIMove();
+        aiExecutor.shutdown();
+        try {
+            if (ponderer != null) {
+                ponderer.shutdown(5, TimeUnit.SECONDS);
+            }
+            aiExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            if (!gameboard.winnerFound() && !gameboard.isFull()) {
+                recordGame();
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Could not write game journal: " + e.getMessage());
+            }
+        }
+        if (evaluationCache != null) {
+            try {
+                evaluationCache.close();
+            } catch (IOException e) {
+                System.err.println("Could not write evaluation cache: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Method creating all pieces of the UI that are not explicitly created elsewhere.
      */
     public void createUI(){
-        MediaPlayer audioPlayer = new MediaPlayer(backgroundMusic);
-        audioPlayer.setAutoPlay(true);
-        audioPlayer.setCycleCount(MediaPlayer.INDEFINITE);
-        audioPlayer.play();
-        audio = new MediaView();
-        audio.setMediaPlayer(audioPlayer);
-        audioPlayer.play();
-
         backgroundPane = new Pane();
         backgroundPane.setId("backgroundPane");
-        MediaPlayer player = new MediaPlayer(doomguyBackground);
-        player.setAutoPlay(true);
-        player.setCycleCount(MediaPlayer.INDEFINITE);
-        player.setMute(true);
-        backgroundView = new MediaView(player);
+        backgroundView = new MediaView();	//the video is set by loadMedia once it's loaded
         backgroundView.fitHeightProperty().bind(backgroundPane.heightProperty());
         backgroundView.setPreserveRatio(true);
         backgroundView.setX(-350);
@@ -316,11 +752,20 @@ public class Main extends Application{
         statusLabel.setStyle("-fx-font-size: 60;");
         statusLabel.setBackground(new Background(new BackgroundFill(Color.TRANSPARENT, null, null)));
 
+        thinkingIndicator = new ProgressIndicator();
+        thinkingIndicator.setMaxSize(50, 50);
+        thinkingIndicator.setVisible(false);
+
         playerBox = new HBox();
         playerBox.setAlignment(Pos.CENTER_LEFT);
         playerBox.setMargin(playerImage, new Insets(15));
         playerBox.setMinWidth(root.getWidth());
-        playerBox.getChildren().addAll(playerImage, statusLabel);
+        analysisLabel = new Label();
+        analysisLabel.setTextFill(Color.ORANGE);
+        analysisLabel.setStyle("-fx-font-size: 16;");
+        analysisLabel.setPadding(new Insets(0, 0, 0, 15));
+
+        playerBox.getChildren().addAll(playerImage, statusLabel, thinkingIndicator, analysisLabel);
 
         gridPane = new GridPane();
         gridPane.setPrefHeight(400);
@@ -341,6 +786,11 @@ public class Main extends Application{
         discPane.setPrefHeight(400);
         discPane.setPrefWidth(450);
         gridPane.add(discPane, 0, 1, 2, 1);
+        if ("canvas".equals(System.getProperty("connect4.renderer"))) {
+            boardCanvas = new BoardCanvas(gameboard.rows, gameboard.cols, cellSize, discRadius, playerOneImage, playerTwoImage);
+            discPane.getChildren().add(boardCanvas.getCanvas());
+            boardCanvas.start();
+        }
 
         buttons = new HBox();
         buttons.setMaxWidth(640);
@@ -350,7 +800,7 @@ public class Main extends Application{
         newGame = new Button("New Game");
         newGame.setDefaultButton(false);
         newGame.setEffect(glow);
-        newGame.setMinWidth(4*(buttons.getMaxWidth()/8));
+        newGame.setMinWidth(2*(buttons.getMaxWidth()/8));
         newGame.setMaxHeight(30);
         newGame.setId("bottomButton");
         newGame.setOnMouseClicked(event ->{
@@ -359,7 +809,7 @@ public class Main extends Application{
         exit = new Button("Exit");
         exit.setCancelButton(true);
         exit.setEffect(glow);
-        exit.setMinWidth(2*buttons.getMaxWidth()/8);
+        exit.setMinWidth(buttons.getMaxWidth()/8);
         exit.setMaxHeight(30);
         exit.setId("bottomButton");
         exit.setOnMouseClicked(event ->{
@@ -371,14 +821,60 @@ public class Main extends Application{
         aiToggle.setOnAction(event -> {
             if (aiToggle.isSelected()){
                 aifoe = true;
+                if (analysis) {
+                    return;	//the AI plays again once analysis mode is turned off
+                }
+                if (gameboard.getTurn() == 2 && !gameboard.winnerFound()) {
+                    if (!dropping) {
+                        startAIMove();	//otherwise pieceLanded starts it, so the answer can't come before the piece lands
+                    }
+                } else {
+                    startPondering();
+                }
             } else {
                 aifoe = false;
+                if (!analysis && gameboard.getTurn() == 2 && !gameboard.winnerFound()) {
+                    cancelAIMove();
+                    statusLabel.setText("Player 2's Turn");
+                }
             }
         });
         aiToggle.setAlignment(Pos.CENTER);
         aiToggle.setEffect(glow);
-        aiToggle.setMinWidth(2*(buttons.getMaxWidth()/8));
-        buttons.getChildren().addAll(aiToggle, newGame, exit);
+        aiToggle.setMinWidth(buttons.getMaxWidth()/8);
+        analysisToggle = new ToggleButton("Analyze");
+        analysisToggle.setEffect(glow);
+        analysisToggle.setMinWidth(2*(buttons.getMaxWidth()/8));
+        analysisToggle.setOnAction(event -> {
+            analysis = analysisToggle.isSelected();
+            cancelAIMove();
+            if (dropping) {
+                return;	//pieceLanded starts what the mode needs
+            }
+            if (analysis) {
+                startAnalysis();
+            } else {
+                analysisLabel.setText("");
+                if (aifoe && gameboard.getTurn() == 2 && !gameboard.winnerFound() && !gameboard.isFull()) {
+                    startAIMove();
+                } else {
+                    startPondering();
+                }
+            }
+        });
+        back = new Button("<");
+        back.setEffect(glow);
+        back.setMinWidth(buttons.getMaxWidth()/8);
+        back.setMaxHeight(30);
+        back.setId("bottomButton");
+        back.setOnAction(event -> takeBack());
+        forward = new Button(">");
+        forward.setEffect(glow);
+        forward.setMinWidth(buttons.getMaxWidth()/8);
+        forward.setMaxHeight(30);
+        forward.setId("bottomButton");
+        forward.setOnAction(event -> redoMove());
+        buttons.getChildren().addAll(aiToggle, analysisToggle, back, forward, newGame, exit);
 
     }
 }
\ No newline at end of file
@@ -0,0 +1,205 @@
+package main;
+
+/**
+ * Decides the order the AIPlayer search tries columns in. The best move from the transposition
+ * table or the previous iteration always goes first. The rest can be ordered by any mix of:
+ * center-out column order, killer moves (the last two moves that caused a cutoff at the same ply)
+ * and a history table (how often each column caused a cutoff, weighted by depth).
+ * Each searching thread needs its own MoveOrdering because killers and history are per search.
+ */
+public class MoveOrdering {
+	/** Sort score of the move from the transposition table */
+	private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+
+	/** Sort score of the first killer move, the second killer is one less */
+	private static final int KILLER_SCORE = Integer.MAX_VALUE - 2;
+
+	/** Largest a history entry may grow to, far below the killer scores and int overflow */
+	private static final int HISTORY_LIMIT = 1 << 24;
+
+	/** Order columns by distance from the center when true, left to right otherwise */
+	private final boolean centerFirst;
+
+	/** Try the killer moves of the ply right after the hash move when true */
+	private final boolean useKillers;
+
+	/** Order the remaining columns by the history table when true */
+	private final boolean useHistory;
+
+	/** How many places the static column order is rotated, so helper threads search differently */
+	private final int rotation;
+
+	/** The static column order, built the first time a gameboard is seen */
+	private int[] staticOrder;
+
+	/** Two killer moves for each ply, -1 for none */
+	private int[][] killers;
+
+	/** Cutoff history of each column for each player */
+	private int[][] history;
+
+	/** Sort scores of the moves being ordered */
+	private int[] scores;
+
+	/** Number of beta cutoffs in the current search */
+	private long cutoffs;
+
+	/** Number of beta cutoffs in the current search caused by the first move tried */
+	private long firstMoveCutoffs;
+
+	/**
+	 * Creates a move ordering with every heuristic turned on
+	 */
+	public MoveOrdering() {
+		this(true, true, true, 0);
+	}
+
+	/**
+	 * Creates a move ordering with the chosen heuristics
+	 * @param centerFirst order columns by distance from the center instead of left to right
+	 * @param useKillers try killer moves right after the hash move
+	 * @param useHistory order the remaining moves by the history table
+	 * @param rotation how many places to rotate the static column order
+	 */
+	public MoveOrdering(boolean centerFirst, boolean useKillers, boolean useHistory, int rotation) {
+		this.centerFirst = centerFirst;
+		this.useKillers = useKillers;
+		this.useHistory = useHistory;
+		this.rotation = rotation;
+	}
+
+	/**
+	 * Creates a move ordering with the same heuristics as this one but its own killers and history
+	 * @param rotation how many places to rotate the static column order
+	 * @return the new move ordering
+	 */
+	public MoveOrdering copy(int rotation) {
+		return new MoveOrdering(centerFirst, useKillers, useHistory, rotation);
+	}
+
+	/**
+	 * Prepares for a new search. Killers are cleared, history is halved so recent cutoffs count
+	 * most and the cutoff counters are reset.
+	 * @param board the gameboard that will be searched
+	 */
+	public void newSearch(Gameboard board) {
+		int maxPly = board.rows * board.cols + 1;
+		if (staticOrder == null || staticOrder.length != board.cols || killers.length != maxPly) {
+			staticOrder = new int[board.cols];
+			if (centerFirst) {
+				//center column, then alternating outward, left side first
+				int center = (board.cols - 1) / 2;
+				int i = 0;
+				for (int offset = 0; i < board.cols; offset++) {
+					if (center - offset >= 0) {
+						staticOrder[i++] = center - offset;
+					}
+					if (offset > 0 && center + offset < board.cols) {
+						staticOrder[i++] = center + offset;
+					}
+				}
+			} else {
+				for (int i = 0; i < board.cols; i++) {
+					staticOrder[i] = i;
+				}
+			}
+			killers = new int[maxPly][2];
+			history = new int[3][board.cols];
+			scores = new int[board.cols];
+		}
+		for (int[] killer : killers) {
+			killer[0] = -1;
+			killer[1] = -1;
+		}
+		for (int player = 1; player <= 2; player++) {
+			for (int col = 0; col < board.cols; col++) {
+				history[player][col] /= 2;
+			}
+		}
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+	}
+
+	/**
+	 * Fills a buffer with the playable columns in the order they should be searched
+	 * @param board the gameboard being searched
+	 * @param player the player to move
+	 * @param ply how many moves below the root the position is
+	 * @param hashMove the column from the transposition table or previous iteration, -1 for none
+	 * @param moves buffer to fill, at least as long as the number of columns
+	 * @return the number of moves put in the buffer
+	 */
+	public int orderMoves(Gameboard board, int player, int ply, int hashMove, int[] moves) {
+		int count = 0;
+		for (int i = 0; i < staticOrder.length; i++) {
+			int col = staticOrder[(i + rotation) % staticOrder.length];
+			if (!board.canPlay(col)) {
+				continue;
+			}
+			int score = 0;
+			if (col == hashMove) {
+				score = HASH_MOVE_SCORE;
+			} else if (useKillers && col == killers[ply][0]) {
+				score = KILLER_SCORE;
+			} else if (useKillers && col == killers[ply][1]) {
+				score = KILLER_SCORE - 1;
+			} else if (useHistory) {
+				score = history[player][col];
+			}
+			//insertion sort, equal scores keep the static order
+			int j = count++;
+			while (j > 0 && scores[j - 1] < score) {
+				moves[j] = moves[j - 1];
+				scores[j] = scores[j - 1];
+				j--;
+			}
+			moves[j] = col;
+			scores[j] = score;
+		}
+		return count;
+	}
+
+	/**
+	 * Records a move that caused a beta cutoff
+	 * @param player the player who made the move
+	 * @param ply how many moves below the root the position is
+	 * @param col the column of the move
+	 * @param depth how many layers were left to search below the position
+	 * @param firstMove true if the move was the first one tried
+	 */
+	public void recordCutoff(int player, int ply, int col, int depth, boolean firstMove) {
+		cutoffs++;
+		if (firstMove) {
+			firstMoveCutoffs++;
+		}
+		if (useKillers && killers[ply][0] != col) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = col;
+		}
+		if (useHistory) {
+			history[player][col] += depth * depth;
+			if (history[player][col] > HISTORY_LIMIT) {
+				//halve the player's whole row rather than let a long search overflow it
+				for (int c = 0; c < history[player].length; c++) {
+					history[player][c] /= 2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of beta cutoffs in the current search
+	 * @return the cutoff count
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Gets the number of beta cutoffs in the current search that the first move tried caused
+	 * @return the first-move cutoff count
+	 */
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+}
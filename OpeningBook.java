@@ -0,0 +1,162 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only opening book, memory-mapped from a file written by OpeningBookGenerator so the book
+ * never has to be loaded onto the heap. The file is a header followed by fixed-size entries
+ * sorted by position key, which are found with a binary search straight over the mapping.
+ * <pre>
+ * header: magic (int) | version (int) | plies (int) | entry count (int)
+ *         rows (byte) | columns (byte) | length (byte) | unused (byte)
+ * entry:  position key (long) | best column (byte) | moves to spare (byte) | score (short)
+ * </pre>
+ * Keys come from Gameboard.getCanonicalKey(), so a position and its mirror image share one entry
+ * and the book is half the size it would otherwise be. The column of an entry is for the position
+ * with that key and has to be mirrored for the other one, see Gameboard.isKeyMirrored. Scores
+ * favor player 1 when positive. A heuristic score is stored clamped to a short with 0 moves to
+ * spare; a solved win is stored as 1 or -1 for the winner with the winner's moves to spare plus
+ * one, and reads back as SOLVED_WIN plus the moves to spare, the way the search scores it. A book
+ * only holds positions of the gameboard size in its header.
+ */
+public class OpeningBook {
+	/** First four bytes of a book file, "C4BK" */
+	static final int MAGIC = 0x4334424B;
+
+	/** Version of the file layout */
+	static final int VERSION = 4;
+
+	/** Size of the header in bytes */
+	static final int HEADER_BYTES = 20;
+
+	/** Size of one entry in bytes */
+	static final int ENTRY_BYTES = 12;
+
+	/** The mapped book file */
+	private final MappedByteBuffer buffer;
+
+	/** Positions with up to this many pieces are in the book */
+	private final int plies;
+
+	/** Number of entries in the book */
+	private final int entries;
+
+	/** Number of rows of the gameboard the book is for */
+	private final int rows;
+
+	/** Number of columns of the gameboard the book is for */
+	private final int cols;
+
+	/** Number of pieces in a row needed to win on the gameboard the book is for */
+	private final int length;
+
+	/**
+	 * Wraps a mapped book file after its header has been checked
+	 */
+	private OpeningBook(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.plies = buffer.getInt(8);
+		this.entries = buffer.getInt(12);
+		this.rows = buffer.get(16);
+		this.cols = buffer.get(17);
+		this.length = buffer.get(18);
+	}
+
+	/**
+	 * Maps an opening book file into memory
+	 * @param file the book file written by OpeningBookGenerator
+	 * @return the opening book
+	 * @throws IOException if the file can't be read or isn't a book file
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException(file + " is not an opening book");
+			}
+			if (channel.size() != HEADER_BYTES + (long) buffer.getInt(12) * ENTRY_BYTES) {
+				throw new IOException(file + " is truncated");
+			}
+			return new OpeningBook(buffer);
+		}
+	}
+
+	/**
+	 * Gets how deep the book goes
+	 * @return positions with up to this many pieces are in the book
+	 */
+	public int getPlies() {
+		return plies;
+	}
+
+	/**
+	 * Checks whether the book is for a gameboard's size
+	 * @param board the gameboard
+	 * @return true if the book's positions can be looked up for the gameboard
+	 */
+	public boolean fits(Gameboard board) {
+		return board.rows == rows && board.cols == cols && board.length == length;
+	}
+
+	/**
+	 * Gets the number of positions in the book
+	 * @return the entry count
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * Finds the entry for a position
+	 * @param key the canonical key from Gameboard.getCanonicalKey()
+	 * @return the byte offset of the entry in the file, or -1 if the position isn't in the book
+	 */
+	private int find(long key) {
+		int low = 0;
+		int high = entries - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midKey = buffer.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return HEADER_BYTES + mid * ENTRY_BYTES;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks up the best move for a position
+	 * @param key the canonical key from Gameboard.getCanonicalKey()
+	 * @return the best column for the position with that key, or -1 if the position isn't in the book
+	 */
+	public int getMove(long key) {
+		int offset = find(key);
+		return offset < 0 ? -1 : buffer.get(offset + 8);
+	}
+
+	/**
+	 * Looks up the score of a position
+	 * @param key the canonical key from Gameboard.getCanonicalKey()
+	 * @return the stored score, SOLVED_WIN plus the moves to spare for a solved win, or 0 if the
+	 * position isn't in the book
+	 */
+	public int getScore(long key) {
+		int offset = find(key);
+		if (offset < 0) {
+			return 0;
+		}
+		int score = buffer.getShort(offset + 10);
+		int spare = buffer.get(offset + 9) & 0xFF;
+		return spare == 0 ? score : Integer.signum(score) * (AIPlayer.SOLVED_WIN + spare - 1);
+	}
+}
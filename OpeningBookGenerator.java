@@ -0,0 +1,160 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline generator for the opening book. Finds every distinct position with up to N pieces
+ * that nobody has won yet, counting a position and its mirror image as one, deep-searches each
+ * one across all cores and writes the results sorted by canonical key in the format OpeningBook
+ * reads.
+ * <pre>
+ * usage: OpeningBookGenerator [plies=6] [depth=14] [file=openingbook.bin] [threads=cores] [size=6x7x4]
+ * </pre>
+ */
+public class OpeningBookGenerator {
+
+	public static void main(String[] args) throws Exception {
+		int plies = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+		Path file = Paths.get(args.length > 2 ? args[2] : "openingbook.bin");
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		String size = args.length > 4 ? args[4] : "6x7x4";
+		long start = System.nanoTime();
+		int entries = generate(plies, depth, threads, file, size);
+		System.out.printf("wrote %d positions to %s in %.1f s%n", entries, file, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Generates an opening book and writes it to a file. The file is written next to its final
+	 * location and moved into place once complete, so a reader never sees half a book.
+	 * @param plies positions with up to this many pieces go in the book
+	 * @param depth how many layers deep to search each position
+	 * @param threads number of threads to search with
+	 * @param file where to write the book
+	 * @param size the gameboard size, see Gameboard.parse
+	 * @return the number of positions written
+	 * @throws Exception if a search fails or the file can't be written
+	 * @throws IllegalArgumentException if the gameboard is too big for bitboards, which the book keys need
+	 */
+	public static int generate(int plies, int depth, int threads, Path file, String size) throws Exception {
+		Gameboard start = Gameboard.parse(size);
+		if (!start.hasBitboards()) {
+			throw new IllegalArgumentException("a " + size + " gameboard is too big for an opening book");
+		}
+		List<int[]> positions = new ArrayList<>();
+		collect(start, new int[plies + 1], 0, plies, new HashSet<>(), positions);
+
+		long[] keys = new long[positions.size()];
+		byte[] moves = new byte[positions.size()];
+		byte[] spares = new byte[positions.size()];
+		short[] scores = new short[positions.size()];
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ThreadLocal<AIPlayer> searchers = ThreadLocal.withInitial(() -> new AIPlayer(new Gameboard(start)));
+		AtomicInteger done = new AtomicInteger();
+		List<Future<?>> searches = new ArrayList<>();
+		for (int i = 0; i < positions.size(); i++) {
+			final int index = i;
+			searches.add(pool.submit(() -> {
+				AIPlayer ai = searchers.get();
+				//start every position cold so the book doesn't depend on which thread searched what before
+				ai.newGame();
+				Gameboard board = ai.getBoard();
+				board.clear();
+				int[] line = positions.get(index);
+				for (int ply = 0; ply < line.length; ply++) {
+					board.testMove(line[ply], ply % 2 + 1);
+				}
+				Move m = ai.getBestMove(line.length % 2 + 1, SearchLimits.depth(depth));
+				keys[index] = board.getCanonicalKey();
+				moves[index] = (byte) (board.isKeyMirrored() ? board.cols - 1 - m.getCol() : m.getCol());
+				int score = ai.getBestScore();
+				if (Math.abs(score) >= AIPlayer.SOLVED_WIN) {
+					spares[index] = (byte) (Math.abs(score) - AIPlayer.SOLVED_WIN + 1);
+					scores[index] = (short) Integer.signum(score);
+				} else {
+					scores[index] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+				}
+				int count = done.incrementAndGet();
+				if (count % 1000 == 0) {
+					System.out.println(count + " / " + positions.size());
+				}
+			}));
+		}
+		for (Future<?> search : searches) {
+			search.get();
+		}
+		pool.shutdown();
+
+		Integer[] order = new Integer[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(OpeningBook.VERSION);
+			out.writeInt(plies);
+			out.writeInt(keys.length);
+			out.writeByte(start.rows);
+			out.writeByte(start.cols);
+			out.writeByte(start.length);
+			out.writeByte(0);
+			for (int i : order) {
+				out.writeLong(keys[i]);
+				out.writeByte(moves[i]);
+				out.writeByte(spares[i]);
+				out.writeShort(scores[i]);
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return keys.length;
+	}
+
+	/**
+	 * Walks the game tree and collects the move sequence of every distinct position with up to
+	 * maxPlies pieces. Positions reached by more than one move order or mirrored are only collected
+	 * once and positions after a winning move are left out.
+	 * @param board the gameboard being walked
+	 * @param line the moves played so far
+	 * @param ply number of moves played so far
+	 * @param maxPlies how deep to walk
+	 * @param seen canonical keys of the positions already collected
+	 * @param positions the move sequences collected so far
+	 */
+	private static void collect(Gameboard board, int[] line, int ply, int maxPlies, Set<Long> seen, List<int[]> positions) {
+		if (!seen.add(board.getCanonicalKey())) {
+			return;
+		}
+		positions.add(Arrays.copyOf(line, ply));
+		if (ply == maxPlies) {
+			return;
+		}
+		int player = ply % 2 + 1;
+		for (int col = 0; col < board.cols; col++) {
+			if (!board.canPlay(col) || board.isWinningMove(col, player)) {
+				continue;
+			}
+			board.testMove(col, player);
+			line[ply] = col;
+			collect(board, line, ply + 1, maxPlies, seen, positions);
+			board.undoMove(col);
+		}
+	}
+}
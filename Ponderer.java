@@ -0,0 +1,246 @@
+package main;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches ahead on the opponent's time. While the opponent thinks, each of their possible
+ * replies is played on a private copy of the gameboard and searched for the AI's answer, the
+ * reply the AI expects first and then center-out. Answers are kept by reply column. Once the
+ * opponent moves, take(reply) returns the answer immediately if it is already found, waits for it
+ * if it is being searched, and otherwise searches that reply next. Every other reply is
+ * dropped. The Ponderer's AIPlayer should share the real AIPlayer's transposition table, so
+ * the work isn't lost even when a reply wasn't reached.
+ */
+public class Ponderer {
+	/** The position the opponent is thinking about */
+	private final Gameboard base;
+
+	/** Copy of the gameboard the replies are played and searched on */
+	private final Gameboard board;
+
+	/** AIPlayer searching the replies */
+	private final AIPlayer ai;
+
+	/** Single background thread the pondering runs on */
+	private final ExecutorService thread = Executors.newSingleThreadExecutor(runnable -> {
+		Thread t = new Thread(runnable, "AI ponder");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** The AI's answer to each reply column, null until it is found */
+	private final Move[] answers;
+
+	/** Number of the current pondering session, answers of older sessions are ignored */
+	private int session;
+
+	/** Column of the reply being searched, -1 for none */
+	private int searching = -1;
+
+	/** Column the opponent played, -1 while they are still thinking */
+	private int played = -1;
+
+	/** True while the current session's pondering runs */
+	private boolean running;
+
+	/** Replies that were already answered or being searched when the opponent played them */
+	private long hits;
+
+	/** Replies that hadn't been reached when the opponent played them */
+	private long misses;
+
+	/**
+	 * Creates a Ponderer for gameboards the size of the given one
+	 * @param size a gameboard of the size that will be pondered on
+	 * @param table the transposition table of the AIPlayer that makes the real moves
+	 */
+	public Ponderer(Gameboard size, TranspositionTable table) {
+		base = new Gameboard(size);
+		board = new Gameboard(size);
+		ai = new AIPlayer(board, table);
+		answers = new Move[size.cols];
+	}
+
+	/**
+	 * Gets the AIPlayer that searches the replies, to configure it like the real one
+	 * @return the pondering AIPlayer
+	 */
+	public AIPlayer getAI() {
+		return ai;
+	}
+
+	/**
+	 * Starts pondering a position the opponent is about to move in. Any earlier pondering is stopped.
+	 * @param position the position, with the opponent to move
+	 * @param player the AI's player number, the player whose answers are searched
+	 */
+	public synchronized void start(Gameboard position, int player) {
+		stop();
+		base.copyFrom(position);
+		played = -1;
+		running = true;
+		final int current = session;
+		thread.submit(() -> ponder(current, player));
+	}
+
+	/**
+	 * Tells the Ponderer which column the opponent played, so it drops the other replies and
+	 * searches that one right away. Can be called before take to use the time the move animates.
+	 * @param col the column the opponent played
+	 */
+	public synchronized void played(int col) {
+		if (!running || played >= 0) {
+			return;
+		}
+		played = col;
+		if (searching != col) {
+			ai.stop();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets the AI's answer to the column the opponent played, waiting for it if it is being searched
+	 * @param col the column the opponent played
+	 * @return the answer, or null if pondering wasn't running or stopped before the answer was found
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public synchronized Move take(int col) throws InterruptedException {
+		if (!running && answers[col] == null) {
+			return null;	//not pondering, or the reply can't be answered
+		}
+		boolean reached = answers[col] != null || searching == col;
+		played(col);
+		while (running && answers[col] == null) {
+			wait();
+		}
+		Move answer = answers[col];
+		if (answer != null && reached) {
+			hits++;
+		} else {
+			misses++;
+		}
+		stop();
+		return answer;
+	}
+
+	/**
+	 * Stops pondering. Answers already found are dropped.
+	 */
+	public synchronized void stop() {
+		session++;
+		running = false;
+		ai.stop();
+		for (int col = 0; col < answers.length; col++) {
+			answers[col] = null;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Stops pondering for good and waits for the pondering thread to finish its search
+	 * @param timeout the longest time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the thread finished, false if the timeout ran out first
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		stop();
+		thread.shutdown();
+		return thread.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Gets how many replies were already answered or being searched when the opponent played them
+	 * @return the hit count
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets how many replies hadn't been reached when the opponent played them
+	 * @return the miss count
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Searches every reply of a session until they are all answered, the opponent's reply is
+	 * answered or the session is stopped
+	 * @param current the session number
+	 * @param player the AI's player number
+	 */
+	private void ponder(int current, int player) {
+		int opponent = player == 1 ? 2 : 1;
+		int[] order = new int[answers.length];
+		synchronized (this) {
+			if (session != current) {
+				return;
+			}
+			board.copyFrom(base);
+			ai.resume();	//under the lock, so stop can only come after it
+		}
+		//the reply the AI expects goes first, found with a shallow search that also warms the table
+		Move expected = ai.getBestMove(opponent, SearchLimits.depth(Math.max(1, ai.getSearchLimits().getDepth() - 4)));
+		int count = 0;
+		if (expected != null) {
+			order[count++] = expected.getCol();
+		}
+		//then center-out, left side first
+		int center = (board.cols - 1) / 2;
+		for (int offset = 0; offset < board.cols; offset++) {
+			for (int col = center - offset; col <= center + offset; col += Math.max(1, 2 * offset)) {
+				if (col >= 0 && col < board.cols && (expected == null || col != expected.getCol())) {
+					order[count++] = col;
+				}
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			int col;
+			synchronized (this) {
+				if (session != current) {
+					return;
+				}
+				col = played >= 0 ? played : order[i];
+				if (answers[col] != null || !board.canPlay(col) || board.isWinningMove(col, opponent)) {
+					if (played >= 0) {
+						break;	//nothing left to search for the reply that was played
+					}
+					continue;
+				}
+				searching = col;
+				ai.resume();
+			}
+			board.testMove(col, opponent);
+			Move answer = ai.getBestMove(player);
+			board.undoMove(col);
+			synchronized (this) {
+				searching = -1;
+				if (session != current) {
+					return;
+				}
+				if (played < 0 || played == col) {
+					answers[col] = answer;	//a search stopped to switch to the played reply is dropped
+				}
+				notifyAll();
+				if (played == col) {
+					break;
+				}
+				if (played >= 0) {
+					i--;	//search the played reply next
+				}
+			}
+		}
+		synchronized (this) {
+			if (session == current) {
+				running = false;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * An immutable game position: the gameboard size and the columns played from the empty
+ * gameboard. A position is a few dozen bytes and can be shared between threads freely, so a game
+ * can be kept as a Position and handed to a ConcurrentEngine without tying up a gameboard or an
+ * AIPlayer between moves. Only the columns of moves are checked as they are played, whether a
+ * move is legal is checked when the position is set up on a gameboard.
+ */
+public final class Position {
+	/** Number of rows of the gameboard */
+	private final int rows;
+
+	/** Number of columns of the gameboard */
+	private final int cols;
+
+	/** Number of pieces in a row needed to win */
+	private final int length;
+
+	/** Column of every move in order, never changed */
+	private final byte[] moves;
+
+	private Position(int rows, int cols, int length, byte[] moves) {
+		this.rows = rows;
+		this.cols = cols;
+		this.length = length;
+		this.moves = moves;
+	}
+
+	/**
+	 * Gets the empty position of a gameboard size
+	 * @param size the gameboard size, see Gameboard.parse
+	 * @return the position with no moves
+	 */
+	public static Position start(String size) {
+		Gameboard board = Gameboard.parse(size);
+		return new Position(board.rows, board.cols, board.length, new byte[0]);
+	}
+
+	/**
+	 * Gets the position on a gameboard
+	 * @param board the gameboard, played from empty
+	 * @return the position
+	 */
+	public static Position of(Gameboard board) {
+		return new Position(board.rows, board.cols, board.length, board.getMoves());
+	}
+
+	/**
+	 * Gets the position after a sequence of moves from the empty gameboard
+	 * @param size the gameboard size, see Gameboard.parse
+	 * @param moves the columns of the moves as digits, as Gameboard.playMoves reads them
+	 * @return the position
+	 * @throws IllegalArgumentException if a move is illegal
+	 */
+	public static Position parse(String size, String moves) {
+		Gameboard board = Gameboard.parse(size);
+		board.playMoves(moves);
+		return of(board);
+	}
+
+	/**
+	 * Gets the position after one more move
+	 * @param col the column of the move
+	 * @return the new position, this one is unchanged
+	 * @throws IllegalArgumentException if the column isn't on the gameboard
+	 */
+	public Position play(int col) {
+		if (col < 0 || col >= cols) {
+			throw new IllegalArgumentException("column " + col + " is not on a " + getBoardSize() + " gameboard");
+		}
+		byte[] next = Arrays.copyOf(moves, moves.length + 1);
+		next[moves.length] = (byte) col;
+		return new Position(rows, cols, length, next);
+	}
+
+	/**
+	 * Sets the position up on a gameboard of the same size, replacing what was on it
+	 * @param board the gameboard
+	 * @throws IllegalArgumentException if the gameboard is another size or a move is illegal
+	 */
+	void setUp(Gameboard board) {
+		if (board.rows != rows || board.cols != cols || board.length != length) {
+			throw new IllegalArgumentException("a " + getBoardSize() + " position doesn't fit a "
+					+ board.rows + "x" + board.cols + "x" + board.length + " gameboard");
+		}
+		board.clear();
+		for (int i = 0; i < moves.length; i++) {
+			int col = moves[i];
+			if (col < 0 || col >= cols || !board.canPlay(col) || board.winnerFound()) {
+				throw new IllegalArgumentException("illegal move " + col + " at " + i + " in " + this);
+			}
+			board.move(col);
+		}
+	}
+
+	/**
+	 * Gets the size of the gameboard
+	 * @return the size as Gameboard.parse reads it, such as 6x7x4
+	 */
+	public String getBoardSize() {
+		return rows + "x" + cols + "x" + length;
+	}
+
+	/**
+	 * Gets the columns played from the empty gameboard
+	 * @return a copy of the columns
+	 */
+	public byte[] getMoves() {
+		return moves.clone();
+	}
+
+	/**
+	 * Gets the number of moves played
+	 * @return the move count
+	 */
+	public int getPly() {
+		return moves.length;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Position position && position.rows == rows && position.cols == cols
+				&& position.length == length && Arrays.equals(position.moves, moves);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(moves) * 31 + getBoardSize().hashCode();
+	}
+
+	/**
+	 * Writes the moves as the digits Gameboard.playMoves reads
+	 * @return the moves
+	 */
+	@Override
+	public String toString() {
+		StringBuilder digits = new StringBuilder(moves.length);
+		for (byte col : moves) {
+			digits.append(Character.forDigit(col, Character.MAX_RADIX));
+		}
+		return digits.toString();
+	}
+}
@@ -0,0 +1,226 @@
+package main;
+
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+/**
+ * Plays back the games of a journal, or lets two engines play each other, on a BoardCanvas. A
+ * background thread produces the moves into a bounded queue and every frame takes as many moves
+ * as the rate allows, so the frame rate doesn't depend on how fast the moves come and the engines
+ * never wait on the screen. Above two moves a second the canvas is in fast-forward mode, where
+ * pieces land without falling.
+ * <pre>
+ * usage: ReplayViewer [-journal games.c4j] [-from 0] [-rate 500]
+ *        ReplayViewer -spectate depth=4 [-opponent spec] [-rate 500] [-board 6x7x4]
+ * </pre>
+ * -rate is in moves per second. A journal is opened read-only, so it can be replayed while a game
+ * is writing to it, and the gameboard size comes from the journal. See EngineSettings for the
+ * engine specs; the opponent defaults to the spectated engine's settings.
+ */
+public class ReplayViewer extends Application {
+	/** Queue entry that starts the next game */
+	private static final int NEW_GAME = -1;
+
+	/** Moves produced but not shown yet, and NEW_GAME markers */
+	private final BlockingQueue<Integer> moves = new ArrayBlockingQueue<>(4096);
+
+	/** The gameboard the shown moves are played on, to find the row of each piece */
+	private Gameboard board;
+
+	/** Draws the pieces */
+	private BoardCanvas canvas;
+
+	/** Shows the game number and the move and frame rates */
+	private Label status;
+
+	/** Number of the game being shown */
+	private long game = -1;
+
+	/** Moves shown so far */
+	private long shown;
+
+	public static void main(String[] args) {
+		launch(args);
+	}
+
+	@Override
+	public void start(Stage stage) throws Exception {
+		String journal = "games.c4j";
+		long from = 0;
+		double rate = 500;
+		String spectate = null;
+		String opponent = null;
+		String boardSize = "6x7x4";
+		Object[] args = getParameters().getRaw().toArray();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = (String) args[i + 1];
+			switch ((String) args[i]) {
+				case "-journal": journal = value; break;
+				case "-from": from = Long.parseLong(value); break;
+				case "-rate": rate = Double.parseDouble(value); break;
+				case "-spectate": spectate = value; break;
+				case "-opponent": opponent = value; break;
+				case "-board": boardSize = value; break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		Thread producer;
+		if (spectate != null) {
+			board = Gameboard.parse(boardSize);
+			EngineSettings engineA = EngineSettings.parse(spectate);
+			EngineSettings engineB = opponent == null ? engineA : EngineSettings.parse(opponent);
+			producer = new Thread(() -> spectate(engineA, engineB, board.rows, board.cols, board.length), "spectated engines");
+		} else {
+			GameJournal games = GameJournal.openForReading(Paths.get(journal));
+			board = Gameboard.parse(games.getBoardSize());
+			final long first = from;
+			producer = new Thread(() -> replay(games, first), "journal replay");
+		}
+		producer.setDaemon(true);
+
+		double cellSize = Math.min(85, Math.min(595.0 / board.cols, 510.0 / board.rows));
+		double discRadius = cellSize * 40 / 85;
+		Image playerOneImage = new Image(getClass().getResource("/main/resources/weirdtechnocaco.png").toString(), true);
+		Image playerTwoImage = new Image(getClass().getResource("/main/resources/weirdtechnoimp.png").toString(), true);
+		canvas = new BoardCanvas(board.rows, board.cols, cellSize, discRadius, playerOneImage, playerTwoImage);
+		canvas.setFastForward(rate > 2);
+		status = new Label();
+		status.setTextFill(Color.ORANGE);
+		BorderPane pane = new BorderPane(canvas.getCanvas());
+		pane.setTop(status);
+		pane.setStyle("-fx-background-color: #290202;");
+		stage.setScene(new Scene(pane));
+		stage.setTitle("Connect Four replay");
+		stage.setOnCloseRequest(event -> Platform.exit());
+		stage.show();
+
+		final double movesPerNano = rate / 1e9;
+		new AnimationTimer() {
+			/** Moves that are due but not shown yet, carried over between frames */
+			private double budget;
+
+			/** Time of the previous frame, 0 before the first */
+			private long last;
+
+			/** Time the rates were last shown */
+			private long statusNanos;
+
+			/** Moves shown when the rates were last shown */
+			private long statusMoves;
+
+			/** Frames drawn when the rates were last shown */
+			private long statusFrames;
+
+			@Override
+			public void handle(long now) {
+				if (last != 0) {
+					budget += (now - last) * movesPerNano;
+				}
+				last = now;
+				while (budget >= 1 && show(moves.poll())) {
+					budget--;
+				}
+				budget = Math.min(budget, 1);	//moves the producer was too slow for aren't made up in a burst
+				if (now - statusNanos >= 500_000_000L) {
+					double seconds = (now - statusNanos) / 1e9;
+					status.setText(String.format("game %d   ply %d   %.0f moves/s   %.0f frames/s", game, board.getTotalMoves(),
+							(shown - statusMoves) / seconds, (canvas.getFrames() - statusFrames) / seconds));
+					statusNanos = now;
+					statusMoves = shown;
+					statusFrames = canvas.getFrames();
+				}
+			}
+		}.start();
+		canvas.start();	//after the timer above, so each frame draws the moves it just took
+		producer.start();
+	}
+
+	/**
+	 * Shows one entry of the queue
+	 * @param entry a column, NEW_GAME or null if the queue is empty
+	 * @return true if a move or new game was shown
+	 */
+	private boolean show(Integer entry) {
+		if (entry == null) {
+			return false;
+		}
+		if (entry == NEW_GAME) {
+			game++;
+			board.clear();
+			canvas.clear();
+		} else {
+			int player = board.getTurn();
+			board.move(entry);
+			canvas.drop(entry, board.getLastMove().getRow(), player, null);
+			shown++;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs on the producer thread, queues every game of a journal from a game on
+	 * @param journal the journal
+	 * @param from number of the first game
+	 */
+	private void replay(GameJournal journal, long from) {
+		try {
+			for (long i = from; i < journal.size(); i++) {
+				moves.put(NEW_GAME);
+				for (byte col : journal.read(i).getMoves()) {
+					moves.put((int) col);
+				}
+			}
+		} catch (InterruptedException e) {
+			//closed
+		} catch (Exception e) {
+			System.err.println("Could not read game journal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs on the producer thread, queues the moves of engine games forever. Each game starts
+	 * with four random moves so the games differ, and the engines swap sides every game.
+	 * @param engineA settings of the first engine
+	 * @param engineB settings of the second engine
+	 * @param rows number of rows of the gameboard
+	 * @param cols number of columns of the gameboard
+	 * @param length number of pieces in a row needed to win
+	 */
+	private void spectate(EngineSettings engineA, EngineSettings engineB, int rows, int cols, int length) {
+		Gameboard played = new Gameboard(rows, cols, length);
+		AIPlayer aiA = new AIPlayer(played);
+		AIPlayer aiB = new AIPlayer(played);
+		engineA.apply(aiA);
+		engineB.apply(aiB);
+		Random random = new Random();
+		try {
+			for (int game = 0; ; game++) {
+				Tournament.playOpening(played, 4, random);
+				moves.put(NEW_GAME);
+				for (byte col : played.getMoves()) {
+					moves.put((int) col);
+				}
+				while (!played.winnerFound() && !played.isFull()) {
+					int player = played.getTurn();
+					Move m = ((player == 1) == (game % 2 == 0) ? aiA : aiB).getBestMove(player);
+					played.move(m.getCol());
+					moves.put(m.getCol());
+				}
+			}
+		} catch (InterruptedException e) {
+			//closed
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package main;
+
+/**
+ * Limits for one AIPlayer search. The search deepens one layer at a time until any of the
+ * limits is reached. A time or node limit of 0 means that limit is not used.
+ */
+public class SearchLimits {
+	/** The deepest iteration the search will run */
+	private final int depth;
+
+	/** Wall-clock budget for the search in milliseconds, 0 for no time limit */
+	private final long timeMillis;
+
+	/** Budget of nodes the search may visit, 0 for no node limit */
+	private final long nodes;
+
+	/**
+	 * Creates a set of search limits
+	 * @param depth the deepest iteration the search will run
+	 * @param timeMillis wall-clock budget in milliseconds, 0 for no time limit
+	 * @param nodes budget of nodes to visit, 0 for no node limit
+	 */
+	public SearchLimits(int depth, long timeMillis, long nodes) {
+		this.depth = depth;
+		this.timeMillis = timeMillis;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Limits that search to a fixed depth with no time or node budget
+	 * @param depth how many layers deep to search
+	 * @return the search limits
+	 */
+	public static SearchLimits depth(int depth) {
+		return new SearchLimits(depth, 0, 0);
+	}
+
+	/**
+	 * Limits that search as deep as the wall-clock budget allows
+	 * @param timeMillis the budget in milliseconds
+	 * @return the search limits
+	 */
+	public static SearchLimits time(long timeMillis) {
+		return new SearchLimits(Integer.MAX_VALUE, timeMillis, 0);
+	}
+
+	/**
+	 * Limits that search as deep as the node budget allows
+	 * @param nodes the number of nodes the search may visit
+	 * @return the search limits
+	 */
+	public static SearchLimits nodes(long nodes) {
+		return new SearchLimits(Integer.MAX_VALUE, 0, nodes);
+	}
+
+	/**
+	 * Gets the deepest iteration the search will run
+	 * @return the depth limit
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the wall-clock budget of the search
+	 * @return the budget in milliseconds, 0 for no time limit
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * Gets the node budget of the search
+	 * @return the number of nodes the search may visit, 0 for no node limit
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+}
@@ -0,0 +1,158 @@
+package main;
+
+import java.util.Locale;
+
+/**
+ * Statistics of one AIPlayer move: where the move came from, how much work it took and how well
+ * the search pruned. Counts include every thread of a parallel search.
+ */
+public class SearchStats {
+	/** Where the move came from: "book", "tactics", "cache", "solver" or "search" */
+	private final String source;
+
+	/** Nodes visited */
+	private final long nodes;
+
+	/** Leaf positions evaluated with the heuristic */
+	private final long leafEvaluations;
+
+	/** Beta cutoffs */
+	private final long cutoffs;
+
+	/** Beta cutoffs caused by the first move tried */
+	private final long firstMoveCutoffs;
+
+	/** Transposition table lookups */
+	private final long tableProbes;
+
+	/** Transposition table lookups that found the position */
+	private final long tableHits;
+
+	/** Depth of the deepest iteration started, or the number of empty spaces for a solved move */
+	private final int depth;
+
+	/** Wall-clock time of the move in nanoseconds */
+	private final long wallNanos;
+
+	/** Score of the move, positive favors player 1 */
+	private final int score;
+
+	/**
+	 * Creates the statistics of a move
+	 */
+	SearchStats(String source, long nodes, long leafEvaluations, long cutoffs, long firstMoveCutoffs,
+			long tableProbes, long tableHits, int depth, long wallNanos, int score) {
+		this.source = source;
+		this.nodes = nodes;
+		this.leafEvaluations = leafEvaluations;
+		this.cutoffs = cutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.tableProbes = tableProbes;
+		this.tableHits = tableHits;
+		this.depth = depth;
+		this.wallNanos = wallNanos;
+		this.score = score;
+	}
+
+	/**
+	 * Gets where the move came from
+	 * @return "book", "tactics", "cache", "solver" or "search"
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the number of nodes visited
+	 * @return the node count of every thread
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the number of leaf positions evaluated with the heuristic
+	 * @return the leaf count
+	 */
+	public long getLeafEvaluations() {
+		return leafEvaluations;
+	}
+
+	/**
+	 * Gets the number of beta cutoffs
+	 * @return the cutoff count
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Gets the depth of the deepest iteration started
+	 * @return the depth, or the number of empty spaces for a solved move
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the score of the move
+	 * @return the score, positive favors player 1
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Gets the wall-clock time of the move
+	 * @return the time in milliseconds
+	 */
+	public double getWallMillis() {
+		return wallNanos / 1e6;
+	}
+
+	/**
+	 * Gets the search speed
+	 * @return nodes per second, 0 if no time was measured
+	 */
+	public double getNodesPerSecond() {
+		return wallNanos == 0 ? 0 : nodes * 1e9 / wallNanos;
+	}
+
+	/**
+	 * Gets the fraction of interior nodes (nodes that weren't leaves) that ended in a beta cutoff
+	 * @return the cutoff rate, 0 if there were no interior nodes
+	 */
+	public double getCutoffRate() {
+		long interior = nodes - leafEvaluations;
+		return interior <= 0 ? 0 : (double) cutoffs / interior;
+	}
+
+	/**
+	 * Gets the fraction of beta cutoffs caused by the first move tried
+	 * @return the first-move cutoff rate, 0 if there were no cutoffs
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+	}
+
+	/**
+	 * Gets the fraction of transposition table lookups that found the position
+	 * @return the hit rate, 0 if the table wasn't used
+	 */
+	public double getTableHitRate() {
+		return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+	}
+
+	/**
+	 * Formats the statistics as one line of key=value pairs, for logs that get parsed, with the
+	 * same decimal point in every locale
+	 * @return the log line
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "source=%s depth=%d score=%d wall_ms=%.3f nodes=%d nps=%.0f leaves=%d"
+				+ " cutoff_rate=%.3f first_move_cutoff_rate=%.3f tt_hit_rate=%.3f",
+				source, depth, score, getWallMillis(), nodes, getNodesPerSecond(), leafEvaluations,
+				getCutoffRate(), getFirstMoveCutoffRate(), getTableHitRate());
+	}
+}
@@ -0,0 +1,269 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless engine-vs-engine tournament, no JavaFX needed. Plays games between two engine
+ * settings in parallel, each game starting from a random opening. Every opening is played twice
+ * with the engines swapping sides, so neither engine gets the better openings.
+ * <pre>
+ * usage: Tournament [-games 1000] [-threads cores] [-plies 4] [-seed 1] [-a spec] [-b spec] [-board 6x7x4]
+ * </pre>
+ * See EngineSettings for the spec format and Gameboard.parse for the gameboard size.
+ */
+public class Tournament {
+	/** Random openings tried before giving up on finding one that doesn't end the game */
+	private static final int MAX_OPENING_TRIES = 1000;
+
+	/** Settings of engine A */
+	private final EngineSettings engineA;
+
+	/** Settings of engine B */
+	private final EngineSettings engineB;
+
+	/** Number of random moves played before the engines take over */
+	private final int openingPlies;
+
+	/** Seed for the random openings, the same seed plays the same openings */
+	private final long seed;
+
+	/** Size of the gameboard, see Gameboard.parse */
+	private final String boardSize;
+
+	/**
+	 * Creates a tournament between two engines
+	 * @param engineA settings of engine A
+	 * @param engineB settings of engine B
+	 * @param openingPlies number of random moves played before the engines take over
+	 * @param seed seed for the random openings
+	 * @param boardSize size of the gameboard, see Gameboard.parse
+	 */
+	public Tournament(EngineSettings engineA, EngineSettings engineB, int openingPlies, long seed, String boardSize) {
+		Gameboard.parse(boardSize);	//fail here rather than in every game
+		this.engineA = engineA;
+		this.engineB = engineB;
+		this.openingPlies = openingPlies;
+		this.seed = seed;
+		this.boardSize = boardSize;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int games = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int plies = 4;
+		long seed = 1;
+		String a = "";
+		String b = "";
+		String board = "6x7x4";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "-games": games = Integer.parseInt(args[i + 1]); break;
+				case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+				case "-plies": plies = Integer.parseInt(args[i + 1]); break;
+				case "-seed": seed = Long.parseLong(args[i + 1]); break;
+				case "-a": a = args[i + 1]; break;
+				case "-b": b = args[i + 1]; break;
+				case "-board": board = args[i + 1]; break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		Tournament tournament = new Tournament(EngineSettings.parse(a), EngineSettings.parse(b), plies, seed, board);
+		System.out.println(tournament.run(games, threads));
+	}
+
+	/**
+	 * Plays the tournament
+	 * @param games number of games to play
+	 * @param threads number of games played at the same time
+	 * @return the results
+	 * @throws Exception if a game fails
+	 */
+	public Results run(int games, int threads) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ThreadLocal<Match> matches = ThreadLocal.withInitial(Match::new);
+		List<Future<GameResult>> played = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < games; i++) {
+			final int game = i;
+			played.add(pool.submit(() -> matches.get().play(game)));
+		}
+		Results results = new Results();
+		for (Future<GameResult> game : played) {
+			results.add(game.get());
+		}
+		results.seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		return results;
+	}
+
+	/**
+	 * Plays a random opening from the empty gameboard. Openings never end the game, so the engines
+	 * always get to play: each move is picked from the columns that aren't full and don't win, and
+	 * the opening starts over if a position has none.
+	 * @param board the gameboard, cleared first
+	 * @param plies number of moves in the opening
+	 * @param random where the moves come from
+	 * @throws IllegalArgumentException if no such opening was found in MAX_OPENING_TRIES tries
+	 */
+	static void playOpening(Gameboard board, int plies, Random random) {
+		int[] eligible = new int[board.cols];
+		for (int attempt = 0; attempt < MAX_OPENING_TRIES; attempt++) {
+			board.clear();
+			while (board.getTotalMoves() < plies) {
+				int count = 0;
+				for (int col = 0; col < board.cols; col++) {
+					if (board.canPlay(col) && !board.isWinningMove(col, board.getTurn())) {
+						eligible[count++] = col;
+					}
+				}
+				if (count == 0) {
+					break;
+				}
+				board.move(eligible[random.nextInt(count)]);
+			}
+			if (board.getTotalMoves() == plies) {
+				return;
+			}
+		}
+		throw new IllegalArgumentException("no opening of " + plies + " moves that doesn't end the game on a "
+				+ board.rows + "x" + board.cols + "x" + board.length + " gameboard");
+	}
+
+	/**
+	 * A gameboard with one AIPlayer for each engine, reused for every game a thread plays so the
+	 * engines keep their transposition tables between games.
+	 */
+	private class Match {
+		/** The gameboard both engines play on */
+		private final Gameboard board = Gameboard.parse(boardSize);
+
+		/** AIPlayer with engine A's settings */
+		private final AIPlayer aiA = new AIPlayer(board);
+
+		/** AIPlayer with engine B's settings */
+		private final AIPlayer aiB = new AIPlayer(board);
+
+		Match() {
+			engineA.apply(aiA);
+			engineB.apply(aiB);
+		}
+
+		/**
+		 * Plays one game. Engine A is player 1 in even games and player 2 in odd games, and each
+		 * pair of games starts from the same random opening.
+		 * @param game the number of the game
+		 * @return the result of the game
+		 */
+		GameResult play(int game) {
+			//nothing learned in the thread's earlier games, so a game's result doesn't depend on the thread playing it
+			aiA.newGame();
+			aiB.newGame();
+			playOpening(board, openingPlies, new Random(seed * 31 + game / 2));
+
+			boolean aIsPlayerOne = game % 2 == 0;
+			GameResult result = new GameResult();
+			while (!board.winnerFound() && !board.isFull()) {
+				int player = board.getTurn();
+				boolean aToMove = (player == 1) == aIsPlayerOne;
+				long moveStart = System.nanoTime();
+				Move m = (aToMove ? aiA : aiB).getBestMove(player);
+				long latency = System.nanoTime() - moveStart;
+				if (aToMove) {
+					result.latenciesA.add(latency);
+				} else {
+					result.latenciesB.add(latency);
+				}
+				board.move(m.getCol());
+			}
+			if (board.winnerFound()) {
+				result.winner = (board.getTurn() == 1) == aIsPlayerOne ? 'A' : 'B';
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The outcome of one game and how long each engine took for each of its moves
+	 */
+	private static class GameResult {
+		/** 'A' or 'B' for the winning engine, 0 for a draw */
+		char winner;
+
+		/** Nanoseconds engine A took for each move */
+		final List<Long> latenciesA = new ArrayList<>();
+
+		/** Nanoseconds engine B took for each move */
+		final List<Long> latenciesB = new ArrayList<>();
+	}
+
+	/**
+	 * Totals for a tournament
+	 */
+	public static class Results {
+		/** Games engine A won */
+		int winsA;
+
+		/** Games engine B won */
+		int winsB;
+
+		/** Games drawn */
+		int draws;
+
+		/** Wall-clock time of the tournament in seconds */
+		double seconds;
+
+		/** Nanoseconds engine A took for each move */
+		private final List<Long> latenciesA = new ArrayList<>();
+
+		/** Nanoseconds engine B took for each move */
+		private final List<Long> latenciesB = new ArrayList<>();
+
+		/**
+		 * Adds a game to the totals
+		 * @param game the result of the game
+		 */
+		void add(GameResult game) {
+			if (game.winner == 'A') {
+				winsA++;
+			} else if (game.winner == 'B') {
+				winsB++;
+			} else {
+				draws++;
+			}
+			latenciesA.addAll(game.latenciesA);
+			latenciesB.addAll(game.latenciesB);
+		}
+
+		/**
+		 * Formats the average and 99th percentile of a list of move latencies
+		 * @param latencies move latencies in nanoseconds
+		 * @return the summary in milliseconds
+		 */
+		private static String latency(List<Long> latencies) {
+			if (latencies.isEmpty()) {
+				return "no moves";
+			}
+			long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+			Arrays.sort(sorted);
+			double average = Arrays.stream(sorted).average().orElse(0) / 1e6;
+			double p99 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1e6;
+			return String.format("%d moves, avg %.2f ms, p99 %.2f ms", sorted.length, average, p99);
+		}
+
+		@Override
+		public String toString() {
+			int games = winsA + winsB + draws;
+			return String.format("games %d in %.1f s (%.1f games/s)%n", games, seconds, games / seconds)
+					+ String.format("A wins %d, B wins %d, draws %d (A scores %.1f%%)%n", winsA, winsB, draws,
+							games == 0 ? 0 : 100.0 * (winsA + draws / 2.0) / games)
+					+ "A latency: " + latency(latenciesA) + "\n"
+					+ "B latency: " + latency(latenciesB);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Fixed-size transposition table for the AIPlayer search, keyed by the Zobrist hash of the gameboard.
+ * Entries are packed into two longs (the key xor'd with the data, then the data) so a torn write
+ * from another thread reads back as a miss instead of a wrong entry. The table is split into
+ * buckets of two entries: the first keeps the deepest result, the second is always replaced.
+ */
+public class TranspositionTable {
+	/** Bound type for a score that is the exact minimax value */
+	public static final int EXACT = 1;
+
+	/** Bound type for a score that is a lower bound (the search failed high) */
+	public static final int LOWER = 2;
+
+	/** Bound type for a score that is an upper bound (the search failed low) */
+	public static final int UPPER = 3;
+
+	/** Number of longs used by one entry */
+	private static final int ENTRY_LONGS = 2;
+
+	/** Number of entries in one bucket */
+	private static final int BUCKET_ENTRIES = 2;
+
+	/** Size of one bucket in bytes */
+	private static final int BUCKET_BYTES = ENTRY_LONGS * BUCKET_ENTRIES * Long.BYTES;
+
+	/** Storage for the entries, either on the heap or in a direct buffer */
+	private final LongBuffer entries;
+
+	/** Mask applied to a key to find its bucket, the bucket count is a power of two */
+	private final long bucketMask;
+
+	/** Generation of the current search, entries from older searches are replaced first */
+	private int generation;
+
+	/**
+	 * Creates a transposition table that fits in the given memory budget.
+	 * @param budgetBytes the most memory the table may use, rounded down to a power of two buckets
+	 * @param offHeap true to allocate the table in a direct buffer outside of the Java heap
+	 */
+	public TranspositionTable(long budgetBytes, boolean offHeap) {
+		// buffers are indexed by int: a heap table holds at most Integer.MAX_VALUE longs, a direct one
+		// at most Integer.MAX_VALUE bytes
+		long maxBytes = offHeap ? Integer.MAX_VALUE : (long) Integer.MAX_VALUE * Long.BYTES;
+		long buckets = Long.highestOneBit(Math.max(1, Math.min(budgetBytes, maxBytes) / BUCKET_BYTES));
+		long longs = buckets * ENTRY_LONGS * BUCKET_ENTRIES;
+		if (offHeap) {
+			entries = ByteBuffer.allocateDirect((int) (longs * Long.BYTES)).order(ByteOrder.nativeOrder()).asLongBuffer();
+		} else {
+			entries = LongBuffer.allocate((int) longs);
+		}
+		bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Marks the start of a new search so entries from earlier searches can be replaced first.
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & 0xFF;
+	}
+
+	/**
+	 * Removes every entry from the table.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.capacity(); i++) {
+			entries.put(i, 0L);
+		}
+		generation = 0;
+	}
+
+	/**
+	 * Gets the number of entries the table can hold.
+	 * @return the entry capacity
+	 */
+	public int capacity() {
+		return entries.capacity() / ENTRY_LONGS;
+	}
+
+	/**
+	 * Looks up a position in the table.
+	 * @param key the Zobrist hash of the position
+	 * @return the packed entry data, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int index = bucketIndex(key);
+		for (int i = 0; i < BUCKET_ENTRIES; i++, index += ENTRY_LONGS) {
+			long data = entries.get(index + 1);
+			if (data != 0 && (entries.get(index) ^ data) == key) {
+				return data;
+			}
+		}
+		return 0L;
+	}
+
+	/**
+	 * Stores a search result. The first entry of the bucket is only replaced by an equal or deeper
+	 * result or one from a newer search, anything else goes into the second entry.
+	 * @param key the Zobrist hash of the position
+	 * @param score the score of the position
+	 * @param depth how many layers deep the position was searched
+	 * @param bound EXACT, LOWER or UPPER
+	 * @param move the column of the best move, or -1 if there is none
+	 */
+	public void store(long key, int score, int depth, int bound, int move) {
+		long data = pack(score, depth, bound, move);
+		int index = bucketIndex(key);
+		int replace = index + ENTRY_LONGS;
+		long first = entries.get(index + 1);
+		if (first == 0 || (entries.get(index) ^ first) == key || generation(first) != generation
+				|| depth >= depth(first)) {
+			replace = index;
+		}
+		entries.put(replace, key ^ data);
+		entries.put(replace + 1, data);
+	}
+
+	/**
+	 * Finds the first long of the bucket a key belongs to.
+	 * @param key the Zobrist hash of the position
+	 * @return index into the entries buffer
+	 */
+	private int bucketIndex(long key) {
+		return (int) (key & bucketMask) * ENTRY_LONGS * BUCKET_ENTRIES;
+	}
+
+	/**
+	 * Packs the fields of an entry into a long. The bound is never 0, so packed data is never 0.
+	 * Layout from the low bits: score (32), depth (8), bound (2), move + 1 (8), generation (8).
+	 */
+	private long pack(int score, int depth, int bound, int move) {
+		return (score & 0xFFFFFFFFL)
+				| ((long) (depth & 0xFF) << 32)
+				| ((long) bound << 40)
+				| ((long) ((move + 1) & 0xFF) << 42)
+				| ((long) generation << 50);
+	}
+
+	/**
+	 * Gets the score from packed entry data
+	 * @param data entry data returned by probe
+	 * @return the stored score
+	 */
+	public static int score(long data) {
+		return (int) data;
+	}
+
+	/**
+	 * Gets the search depth from packed entry data
+	 * @param data entry data returned by probe
+	 * @return how many layers deep the position was searched
+	 */
+	public static int depth(long data) {
+		return (int) (data >>> 32) & 0xFF;
+	}
+
+	/**
+	 * Gets the bound type from packed entry data
+	 * @param data entry data returned by probe
+	 * @return EXACT, LOWER or UPPER
+	 */
+	public static int bound(long data) {
+		return (int) (data >>> 40) & 0x3;
+	}
+
+	/**
+	 * Gets the best move from packed entry data
+	 * @param data entry data returned by probe
+	 * @return the column of the best move, or -1 if there is none
+	 */
+	public static int move(long data) {
+		return ((int) (data >>> 42) & 0xFF) - 1;
+	}
+
+	/**
+	 * Gets the search generation from packed entry data
+	 * @param data entry data returned by probe
+	 * @return the generation the entry was stored in
+	 */
+	private static int generation(long data) {
+		return (int) (data >>> 50) & 0xFF;
+	}
+}
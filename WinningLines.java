@@ -0,0 +1,169 @@
+package main;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of every line of spaces on the gameboard that a player could win with
+ * (69 lines of four on a 6x7 board), built once per gameboard size and shared by every gameboard
+ * of that size. Spaces are numbered the same way as the gameboard's bitboards: col * (rows + 1) + row.
+ * Gameboard keeps a piece count per line and uses the table to update the heuristic value of
+ * the position a few lines at a time instead of rescoring the whole board, and to find wins
+ * on gameboards too big for bitboards.
+ */
+public class WinningLines {
+	/** Tables already built, keyed by rows, columns and length */
+	private static final Map<Long, WinningLines> TABLES = new ConcurrentHashMap<>();
+
+	/** Number of spaces in a line */
+	private final int length;
+
+	/** Bits used per column, one more than the number of rows */
+	private final int colHeight;
+
+	/** The spaces of each line */
+	private final int[][] lineSpaces;
+
+	/** The lines passing through each space */
+	private final int[][] spaceLines;
+
+	/**
+	 * Heuristic value of a line indexed by its packed piece count,
+	 * player 1's count plus player 2's count times (length + 1)
+	 */
+	private final int[] values;
+
+	/**
+	 * Gets the table of lines for a gameboard size, building it the first time the size is used
+	 * @param rows number of rows in the gameboard
+	 * @param cols number of columns in the gameboard
+	 * @param length number of pieces in a row needed to win
+	 * @return the shared table
+	 */
+	public static WinningLines of(int rows, int cols, int length) {
+		long key = ((long) rows << 40) | ((long) cols << 20) | length;
+		return TABLES.computeIfAbsent(key, k -> new WinningLines(rows, cols, length));
+	}
+
+	/**
+	 * Builds the table of lines for a gameboard size
+	 * @param rows number of rows in the gameboard
+	 * @param cols number of columns in the gameboard
+	 * @param length number of pieces in a row needed to win
+	 */
+	public WinningLines(int rows, int cols, int length) {
+		this.length = length;
+		this.colHeight = rows + 1;
+		int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}};	//{row step, col step}
+
+		int count = 0;
+		int[][] found = new int[rows * cols * directions.length][];
+		int[] linesPerSpace = new int[cols * colHeight];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				for (int[] d : directions) {
+					int endRow = row + d[0] * (length - 1);
+					int endCol = col + d[1] * (length - 1);
+					if (endRow < 0 || endRow >= rows || endCol >= cols) {
+						continue;
+					}
+					int[] spaces = new int[length];
+					for (int i = 0; i < length; i++) {
+						spaces[i] = (col + d[1] * i) * colHeight + row + d[0] * i;
+						linesPerSpace[spaces[i]]++;
+					}
+					found[count++] = spaces;
+				}
+			}
+		}
+
+		lineSpaces = new int[count][];
+		System.arraycopy(found, 0, lineSpaces, 0, count);
+		spaceLines = new int[cols * colHeight][];
+		for (int space = 0; space < spaceLines.length; space++) {
+			spaceLines[space] = new int[linesPerSpace[space]];
+			linesPerSpace[space] = 0;
+		}
+		for (int line = 0; line < count; line++) {
+			for (int space : lineSpaces[line]) {
+				spaceLines[space][linesPerSpace[space]++] = line;
+			}
+		}
+
+		values = new int[(length + 1) * (length + 1)];
+		for (int player1 = 0; player1 <= length; player1++) {
+			for (int player2 = 0; player1 + player2 <= length; player2++) {
+				values[player1 + player2 * (length + 1)] = AIPlayer.chainHeuristicValue(player1, player2, length);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of lines on the gameboard
+	 * @return the line count
+	 */
+	public int getLineCount() {
+		return lineSpaces.length;
+	}
+
+	/**
+	 * Gets the spaces of a line
+	 * @param line the line number
+	 * @return the spaces of the line, numbered col * (rows + 1) + row
+	 */
+	public int[] getSpaces(int line) {
+		return lineSpaces[line];
+	}
+
+	/**
+	 * Gets the lines that pass through a space
+	 * @param space the space, numbered col * (rows + 1) + row
+	 * @return the line numbers, empty for the unused bit above each column
+	 */
+	public int[] getLines(int space) {
+		return spaceLines[space];
+	}
+
+	/**
+	 * Gets the amount a piece adds to a line's packed count
+	 * @param player the player the piece belongs to
+	 * @return 1 for player 1, length + 1 for player 2
+	 */
+	public int countStep(int player) {
+		return player == 1 ? 1 : length + 1;
+	}
+
+	/**
+	 * Gets the packed count of a line filled with one player's pieces, a win for that player
+	 * @param player the player number
+	 * @return length for player 1, length * (length + 1) for player 2
+	 */
+	public int fullCount(int player) {
+		return length * countStep(player);
+	}
+
+	/**
+	 * Gets the number of spaces in a line
+	 * @return the number of pieces in a row needed to win
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the heuristic value of a line from its packed piece count
+	 * @param count player 1's count plus player 2's count times (length + 1)
+	 * @return the value of the line, positive for player 1 and negative for player 2
+	 */
+	public int value(int count) {
+		return values[count];
+	}
+
+	/**
+	 * Gets the number of bits per column used to number the spaces
+	 * @return rows + 1
+	 */
+	public int getColHeight() {
+		return colHeight;
+	}
+}
@@ -0,0 +1,39 @@
+package main;
+
+/**
+ * The fixed corpus of positions the benchmarks run on, as move sequences. None of them has a
+ * winner or an immediate win for the player to move.
+ */
+final class BenchmarkPositions {
+	/** Opening position, 6 pieces */
+	static final String OPENING = "665415";
+
+	/** Midgame position, 16 pieces */
+	static final String MIDGAME = "1513456533661140";
+
+	/** Endgame position, 30 pieces */
+	static final String ENDGAME = "465161344345666215144350363001";
+
+	/** Size of the empty gameboard too big for bitboards */
+	static final String WIDE = "8x9x4";
+
+	private BenchmarkPositions() {
+	}
+
+	/**
+	 * Sets up a gameboard with a position from the corpus
+	 * @param name "opening", "midgame", "endgame" or "wide"
+	 * @return a new gameboard holding the position
+	 */
+	static Gameboard load(String name) {
+		Gameboard board = new Gameboard();
+		switch (name) {
+			case "opening": board.playMoves(OPENING); break;
+			case "midgame": board.playMoves(MIDGAME); break;
+			case "endgame": board.playMoves(ENDGAME); break;
+			case "wide": board = Gameboard.parse(WIDE); break;
+			default: throw new IllegalArgumentException("unknown position: " + name);
+		}
+		return board;
+	}
+}
@@ -0,0 +1,83 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the engine's hot paths on a fixed corpus of opening, midgame and endgame positions.
+ * Run with the GC profiler (configured in the build) to see the allocation rate of each path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EngineBenchmark {
+	/** Which position of the corpus to benchmark */
+	@Param({"opening", "midgame", "endgame"})
+	public String position;
+
+	/** The gameboard holding the position */
+	private Gameboard board;
+
+	/** AIPlayer searching the position */
+	private AIPlayer ai;
+
+	/** A line of four pieces for chainHeuristicValue */
+	private final int[] chain = {1, 1, 0, 2};
+
+	/** Column and row of the last piece of the position, for checkWinner */
+	private Move lastMove;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		board = BenchmarkPositions.load(position);
+		lastMove = board.getLastMove();
+		ai = new AIPlayer(board, new TranspositionTable(1 << 20, false));
+		ai.setSolverThreshold(0);
+	}
+
+	@Benchmark
+	public int boardHeuristicValue() {
+		return ai.boardHeuristicValue(board.getBoard());
+	}
+
+	@Benchmark
+	public int chainHeuristicValue() {
+		return AIPlayer.chainHeuristicValue(chain);
+	}
+
+	@Benchmark
+	public int incrementalHeuristicValue() {
+		board.testMove(3, 1);
+		int value = board.getHeuristicValue();
+		board.undoMove(3);
+		return value;
+	}
+
+	@Benchmark
+	public boolean checkWinner() {
+		return board.checkWinner(lastMove.getCol(), lastMove.getRow());
+	}
+
+	@Benchmark
+	public Object makeTestMoves() {
+		return board.makeTestMoves();
+	}
+
+	@Benchmark
+	public Object prepMove() {
+		return board.prepMove(3);
+	}
+}
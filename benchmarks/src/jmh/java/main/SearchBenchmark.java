@@ -0,0 +1,66 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole AIPlayer searches at fixed depths on the benchmark corpus. The engine starts a new game
+ * before every search, so the transposition table and the killer and history tables are empty and
+ * each search starts cold, and the solver is off so the heuristic search is what gets measured.
+ * Searches are timed one at a time in single-shot mode: many take well under a millisecond, where
+ * resetting the engine in a per-invocation setup would add overhead to the measured time. A
+ * search that finds no move fails the benchmark, which keeps the gameboard too big for bitboards
+ * covered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1000)
+@Measurement(iterations = 1000)
+public class SearchBenchmark {
+	/** Depth of the search */
+	@Param({"4", "6", "8"})
+	public int depth;
+
+	/** Which position of the corpus to search */
+	@Param({"opening", "midgame", "endgame", "wide"})
+	public String position;
+
+	/** The gameboard holding the position */
+	private Gameboard board;
+
+	/** AIPlayer searching the position */
+	private AIPlayer ai;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		board = BenchmarkPositions.load(position);
+		ai = new AIPlayer(board, new TranspositionTable(1 << 20, false));
+		ai.setSolverThreshold(0);
+	}
+
+	@Setup(Level.Iteration)
+	public void newGame() {
+		ai.newGame();
+	}
+
+	@Benchmark
+	public Object getBestMove() {
+		Move move = ai.getBestMove(board.getTurn(), SearchLimits.depth(depth));
+		if (move == null) {
+			throw new IllegalStateException("no move found in the " + position + " position");
+		}
+		return move;
+	}
+}